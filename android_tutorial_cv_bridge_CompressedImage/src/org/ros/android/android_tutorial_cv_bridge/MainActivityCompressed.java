@@ -35,13 +35,10 @@ import android.util.Log;
 import android.view.WindowManager;
 import android.widget.ImageView;
 
-import org.opencv.android.Utils;
-import org.opencv.core.Core;
 import org.opencv.core.Point;
 import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
 import org.ros.android.RosActivity;
-import org.ros.message.MessageListener;
 import org.ros.namespace.GraphName;
 import org.ros.node.ConnectedNode;
 import org.ros.node.Node;
@@ -51,8 +48,12 @@ import org.ros.node.NodeMainExecutor;
 import org.ros.node.topic.Publisher;
 import org.ros.node.topic.Subscriber;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 import cv_bridge.CvImage;
+import cv_bridge.CvImagePipeline;
 import cv_bridge.Format;
+import cv_bridge.Rotation;
 import sensor_msgs.CompressedImage;
 import sensor_msgs.ImageEncodings;
 
@@ -67,9 +68,12 @@ public class MainActivityCompressed extends RosActivity implements NodeMain{
     protected Subscriber<CompressedImage> imageSubscriber;
     protected ConnectedNode node;
     protected static final String TAG = "compressed Tutorial";
+    // The Bitmap on screen, only touched on the UI thread.
     protected Bitmap bmp;
+    // A Bitmap the UI thread no longer shows, free to be drawn on the subscriber thread.
+    protected final AtomicReference<Bitmap> spareBmp = new AtomicReference<Bitmap>();
     protected ImageView imageView;
-    protected Runnable displayImage;
+    protected CvImagePipeline<CompressedImage> pipeline;
 
 
     public MainActivityCompressed() {
@@ -85,13 +89,21 @@ public class MainActivityCompressed extends RosActivity implements NodeMain{
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
         setContentView(R.layout.main);
         imageView = (ImageView) findViewById(R.id.imageView);
-        displayImage = new Runnable() {
+    }
+
+    // Shows next, and only once it is on screen gives the Bitmap it replaced back for drawing.
+    protected void showBitmap(final Bitmap next) {
+        runOnUiThread(new Runnable() {
             @Override
             public void run() {
                 // This code will always run on the UI thread, therefore is safe to modify UI elements.
-                imageView.setImageBitmap(bmp);
+                Bitmap shown = bmp;
+                bmp = next;
+                imageView.setImageBitmap(next);
+                if (shown != null && shown != next)
+                    spareBmp.set(shown);
             }
-        };
+        });
     }
 
     @Override
@@ -118,40 +130,46 @@ public class MainActivityCompressed extends RosActivity implements NodeMain{
         final org.apache.commons.logging.Log log = node.getLog();
         imagePublisher = node.newPublisher("/image_converter/output_video/compressed", CompressedImage._TYPE);
         imageSubscriber = node.newSubscriber("/camera/image/compressed", CompressedImage._TYPE);
-        imageSubscriber.addMessageListener(new MessageListener<CompressedImage>() {
+        // Decode, drawing and encode run on their own threads, so a slow encode does not stall the subscriber.
+        pipeline = new CvImagePipeline<CompressedImage>(2,
+                new CvImagePipeline.Decoder<CompressedImage>() {
+                    @Override
+                    public CvImage decode(CompressedImage message) throws Exception {
+                        return CvImage.toCvCopy(message, ImageEncodings.RGB8);
+                    }
+                },
+                new CvImagePipeline.Processor() {
+                    @Override
+                    public CvImage process(CvImage cvImage) {
+                        //make sure the picture is big enough for my circle.
+                        if (cvImage.image.rows() > 110 && cvImage.image.cols() > 110) {
+                            //place the circle in the middle of the picture with radius 100 and color red.
+                            Imgproc.circle(cvImage.image, new Point(cvImage.image.cols() / 2, cvImage.image.rows() / 2), 100, new Scalar(255, 0, 0));
+                        }
+
+                        // Only the Bitmap that is not on screen is drawn, the image is left as is for publishing.
+                        try {
+                            Bitmap next = cvImage.toBitmap(spareBmp.getAndSet(null), Rotation.CLOCKWISE_90);
+                            showBitmap(next);
+                        } catch (Exception e) {
+                            log.error("cv_bridge exception: " + e.getMessage());
+                        }
+                        return cvImage;
+                    }
+                },
+                new CvImagePipeline.Encoder() {
+                    @Override
+                    public void encode(CvImage cvImage) throws Exception {
+                        imagePublisher.publish(cvImage.toCompressedImageMsg(imagePublisher.newMessage(), Format.JPG));
+                    }
+                }) {
             @Override
-            public void onNewMessage(CompressedImage message) {
-                CvImage cvImage;
-                try {
-                    cvImage = CvImage.toCvCopy(message, ImageEncodings.RGB8);
-                } catch (Exception e) {
-                    log.error("cv_bridge exception: " + e.getMessage());
-                    return;
-                }
-
-                //make sure the picture is big enough for my circle.
-                if (cvImage.image.rows() > 110 && cvImage.image.cols() > 110) {
-                    //place the circle in the middle of the picture with radius 100 and color red.
-                    Imgproc.circle(cvImage.image, new Point(cvImage.image.cols() / 2, cvImage.image.rows() / 2), 100, new Scalar(255, 0, 0));
-                }
-
-                cvImage.image = cvImage.image.t();
-                Core.flip(cvImage.image, cvImage.image, 1);
-
-                bmp = Bitmap.createBitmap(cvImage.image.cols(), cvImage.image.rows(), Bitmap.Config.ARGB_8888);
-                Utils.matToBitmap(cvImage.image, bmp);
-                runOnUiThread(displayImage);
-
-                Core.flip(cvImage.image, cvImage.image, 1);
-                cvImage.image = cvImage.image.t();
-
-                try {
-                    imagePublisher.publish(cvImage.toCompressedImageMsg(imagePublisher.newMessage(), Format.JPG));
-                } catch (Exception e) {
-                    log.error("cv_bridge exception: " + e.getMessage());
-                }
+            protected void onError(Stage stage, Exception e) {
+                log.error("cv_bridge exception: " + e.getMessage());
             }
-        });
+        };
+        pipeline.start();
+        imageSubscriber.addMessageListener(pipeline);
         Log.i(TAG, "called onStart");
     }
 
@@ -162,6 +180,13 @@ public class MainActivityCompressed extends RosActivity implements NodeMain{
 
     @Override
     public void onShutdown(Node node) {
+        if (pipeline != null) {
+            try {
+                pipeline.shutdown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     @Override
@@ -50,8 +50,11 @@ import org.ros.node.NodeMainExecutor;
 import org.ros.node.topic.Publisher;
 import org.ros.node.topic.Subscriber;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 import cv_bridge.CvImage;
 import cv_bridge.Format;
+import cv_bridge.Rotation;
 import sensor_msgs.CompressedImage;
 import sensor_msgs.ImageEncodings;
 
@@ -66,9 +69,11 @@ public class MainActivityCompressedJavacv extends RosActivity implements NodeMai
     protected Subscriber<CompressedImage> imageSubscriber;
     protected ConnectedNode node;
     protected static final String TAG = "compressed Tutorial";
+    // The Bitmap on screen, only touched on the UI thread.
     protected Bitmap bmp;
+    // A Bitmap the UI thread no longer shows, free to be drawn on the subscriber thread.
+    protected final AtomicReference<Bitmap> spareBmp = new AtomicReference<Bitmap>();
     protected ImageView imageView;
-    protected Runnable displayImage;
 
 
     public MainActivityCompressedJavacv() {
@@ -84,13 +89,21 @@ public class MainActivityCompressedJavacv extends RosActivity implements NodeMai
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
         setContentView(R.layout.main);
         imageView = (ImageView) findViewById(R.id.imageView);
-        displayImage = new Runnable() {
+    }
+
+    // Shows next, and only once it is on screen gives the Bitmap it replaced back for drawing.
+    protected void showBitmap(final Bitmap next) {
+        runOnUiThread(new Runnable() {
             @Override
             public void run() {
                 // This code will always run on the UI thread, therefore is safe to modify UI elements.
-                imageView.setImageBitmap(bmp);
+                Bitmap shown = bmp;
+                bmp = next;
+                imageView.setImageBitmap(next);
+                if (shown != null && shown != next)
+                    spareBmp.set(shown);
             }
-        };
+        });
     }
 
     @Override
@@ -135,16 +148,18 @@ public class MainActivityCompressedJavacv extends RosActivity implements NodeMai
                     opencv_imgproc.circle(cvImage.image, new Point(cvImage.image.cols() / 2, cvImage.image.rows() / 2), 100, new Scalar(255, 0, 0,0));
                 }
 
-                cvImage.image = cvImage.image.t().asMat();
-                opencv_core.flip(cvImage.image, cvImage.image, 1);
-
-                //from https://code.google.com/p/javacv/issues/detail?id=67
-                bmp = Bitmap.createBitmap(cvImage.image.cols(), cvImage.image.rows(), Bitmap.Config.ARGB_8888);
-                bmp.copyPixelsFromBuffer(cvImage.image.createBuffer());
-                runOnUiThread(displayImage);
-
-                opencv_core.flip(cvImage.image, cvImage.image, 1);
-                cvImage.image = cvImage.image.t().asMat();
+                // Only the Bitmap that is not on screen is drawn, the image is left as is for publishing.
+                try {
+                    opencv_core.Mat display = cvImage.toBitmapMat(Rotation.CLOCKWISE_90);
+                    Bitmap next = spareBmp.getAndSet(null);
+                    if (next == null || next.getWidth() != display.cols() || next.getHeight() != display.rows())
+                        next = Bitmap.createBitmap(display.cols(), display.rows(), Bitmap.Config.ARGB_8888);
+                    //from https://code.google.com/p/javacv/issues/detail?id=67
+                    next.copyPixelsFromBuffer(display.createBuffer());
+                    showBitmap(next);
+                } catch (Exception e) {
+                    log.error("cv_bridge exception: " + e.getMessage());
+                }
 
                 try {
                     imagePublisher.publish(cvImage.toCompressedImageMsg(imagePublisher.newMessage(), Format.JPG));
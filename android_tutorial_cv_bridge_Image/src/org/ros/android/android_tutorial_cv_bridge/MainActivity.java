@@ -35,8 +35,6 @@ import android.util.Log;
 import android.view.WindowManager;
 import android.widget.ImageView;
 
-import org.opencv.android.Utils;
-import org.opencv.core.Core;
 import org.opencv.imgproc.Imgproc;
 import org.opencv.core.Point;
 import org.opencv.core.Scalar;
@@ -52,8 +50,11 @@ import org.ros.node.topic.Publisher;
 import org.ros.node.topic.Subscriber;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import cv_bridge.CvImage;
+import cv_bridge.LatestFrameMailbox;
+import cv_bridge.Rotation;
 import sensor_msgs.Image;
 import sensor_msgs.ImageEncodings;
 
@@ -69,8 +70,11 @@ public class MainActivity extends RosActivity implements NodeMain{
     protected ConnectedNode node;
     protected static final String TAG = "cv_bridge Tutorial";
     protected ImageView imageView;
+    // The Bitmap on screen, only touched on the UI thread.
     protected Bitmap bmp;
-    protected Runnable displayImage;
+    // A Bitmap the UI thread no longer shows, free to be drawn on the subscriber thread.
+    protected final AtomicReference<Bitmap> spareBmp = new AtomicReference<Bitmap>();
+    protected LatestFrameMailbox<Image> mailbox;
 
 
     public MainActivity() {
@@ -86,13 +90,21 @@ public class MainActivity extends RosActivity implements NodeMain{
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
         setContentView(R.layout.main);
         imageView = (ImageView) findViewById(R.id.imageView);
-        displayImage = new Runnable() {
+    }
+
+    // Shows next, and only once it is on screen gives the Bitmap it replaced back for drawing.
+    protected void showBitmap(final Bitmap next) {
+        runOnUiThread(new Runnable() {
             @Override
             public void run() {
                 // This code will always run on the UI thread, therefore is safe to modify UI elements.
-                imageView.setImageBitmap(bmp);
+                Bitmap shown = bmp;
+                bmp = next;
+                imageView.setImageBitmap(next);
+                if (shown != null && shown != next)
+                    spareBmp.set(shown);
             }
-        };
+        });
     }
 
     @Override
@@ -119,7 +131,8 @@ public class MainActivity extends RosActivity implements NodeMain{
         final org.apache.commons.logging.Log log = node.getLog();
         imagePublisher = node.newPublisher("/image_converter/output_video/raw", Image._TYPE);
         imageSubscriber = node.newSubscriber("/camera/image/raw", Image._TYPE);
-        imageSubscriber.addMessageListener(new MessageListener<Image>() {
+        // Only the newest frame is converted, older ones are dropped while the previous one is processed.
+        mailbox = new LatestFrameMailbox<Image>(new MessageListener<Image>() {
             @Override
             public void onNewMessage(Image message) {
                 CvImage cvImage;
@@ -135,15 +148,13 @@ public class MainActivity extends RosActivity implements NodeMain{
                     Imgproc.circle(cvImage.image, new Point(cvImage.image.cols() / 2, cvImage.image.rows() / 2), 100, new Scalar(255, 0, 0));
                 }
 
-                cvImage.image = cvImage.image.t();
-                Core.flip(cvImage.image,cvImage.image,1);
-
-                bmp = Bitmap.createBitmap(cvImage.image.cols(), cvImage.image.rows(), Bitmap.Config.ARGB_8888);
-                Utils.matToBitmap(cvImage.image, bmp);
-                runOnUiThread(displayImage);
-
-                Core.flip(cvImage.image, cvImage.image, 1);
-                cvImage.image = cvImage.image.t();
+                // Only the Bitmap that is not on screen is drawn, the image is left as is for publishing.
+                try {
+                    Bitmap next = cvImage.toBitmap(spareBmp.getAndSet(null), Rotation.CLOCKWISE_90);
+                    showBitmap(next);
+                } catch (Exception e) {
+                    log.error("cv_bridge exception: " + e.getMessage());
+                }
 
                 try {
                     imagePublisher.publish(cvImage.toImageMsg(imagePublisher.newMessage()));
@@ -152,6 +163,8 @@ public class MainActivity extends RosActivity implements NodeMain{
                 }
             }
         });
+        mailbox.start();
+        imageSubscriber.addMessageListener(mailbox);
         Log.i(TAG, "called onStart");
     }
 
@@ -162,6 +175,13 @@ public class MainActivity extends RosActivity implements NodeMain{
 
     @Override
     public void onShutdown(Node node) {
+        if (mailbox != null) {
+            try {
+                mailbox.shutdown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     @Override
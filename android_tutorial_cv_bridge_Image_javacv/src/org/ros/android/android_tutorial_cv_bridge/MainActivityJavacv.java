@@ -51,7 +51,10 @@ import org.ros.node.topic.Publisher;
 import org.ros.node.topic.Subscriber;
 
 
+import java.util.concurrent.atomic.AtomicReference;
+
 import cv_bridge.CvImage;
+import cv_bridge.Rotation;
 import sensor_msgs.Image;
 import sensor_msgs.ImageEncodings;
 
@@ -67,8 +70,10 @@ public class MainActivityJavacv extends RosActivity implements NodeMain{
     protected ConnectedNode node;
     protected static final String TAG = "cv_bridge Tutorial";
     protected ImageView imageView;
+    // The Bitmap on screen, only touched on the UI thread.
     protected Bitmap bmp;
-    protected Runnable displayImage;
+    // A Bitmap the UI thread no longer shows, free to be drawn on the subscriber thread.
+    protected final AtomicReference<Bitmap> spareBmp = new AtomicReference<Bitmap>();
 
 
     public MainActivityJavacv() {
@@ -84,13 +89,21 @@ public class MainActivityJavacv extends RosActivity implements NodeMain{
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
         setContentView(R.layout.main);
         imageView = (ImageView) findViewById(R.id.imageView);
-        displayImage = new Runnable() {
+    }
+
+    // Shows next, and only once it is on screen gives the Bitmap it replaced back for drawing.
+    protected void showBitmap(final Bitmap next) {
+        runOnUiThread(new Runnable() {
             @Override
             public void run() {
                 // This code will always run on the UI thread, therefore is safe to modify UI elements.
-                imageView.setImageBitmap(bmp);
+                Bitmap shown = bmp;
+                bmp = next;
+                imageView.setImageBitmap(next);
+                if (shown != null && shown != next)
+                    spareBmp.set(shown);
             }
-        };
+        });
     }
 
     @Override
@@ -134,15 +147,18 @@ public class MainActivityJavacv extends RosActivity implements NodeMain{
                         opencv_imgproc.circle(cvImage.image, new Point(cvImage.image.cols() / 2, cvImage.image.rows() / 2), 100, new Scalar(255, 0, 0, 0));
                     }
 
-                    cvImage.image =  cvImage.image.t().asMat();
-                    opencv_core.flip(cvImage.image, cvImage.image, 1);
-
-                    bmp = Bitmap.createBitmap(cvImage.image.cols(), cvImage.image.rows(), Bitmap.Config.ARGB_8888);
-                    bmp.copyPixelsFromBuffer(cvImage.image.createBuffer());
-                    runOnUiThread(displayImage);
-
-                    opencv_core.flip(cvImage.image, cvImage.image, 1);
-                    cvImage.image = cvImage.image.t().asMat();
+                    // Only the Bitmap that is not on screen is drawn, the image is left as is for publishing.
+                    try {
+                        opencv_core.Mat display = cvImage.toBitmapMat(Rotation.CLOCKWISE_90);
+                        Bitmap next = spareBmp.getAndSet(null);
+                        if (next == null || next.getWidth() != display.cols() || next.getHeight() != display.rows())
+                            next = Bitmap.createBitmap(display.cols(), display.rows(), Bitmap.Config.ARGB_8888);
+                        //from https://code.google.com/p/javacv/issues/detail?id=67
+                        next.copyPixelsFromBuffer(display.createBuffer());
+                        showBitmap(next);
+                    } catch (Exception e) {
+                        log.error("cv_bridge exception: " + e.getMessage());
+                    }
 
                     try {
                         cvImage = CvImage.cvtColor(cvImage,"rgb8");
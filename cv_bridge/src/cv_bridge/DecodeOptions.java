@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2015, Tal Regev
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Android Sensors Driver nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cv_bridge;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Decode parameters for CvImage.toCvCopy(CompressedImage, String, DecodeOptions).
+ * The image is decoded at 1/2, 1/4 or 1/8 of its size, libjpeg does the reduction in the DCT domain.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class DecodeOptions
+{
+    protected int scale = 1;
+    protected int maxSize = 0;
+
+    /**
+     * @param scale the reduction factor: 1, 2, 4 or 8.
+     */
+    public DecodeOptions setScale(final int scale)
+    {
+        if (scale != 1 && scale != 2 && scale != 4 && scale != 8)
+            throw new IllegalArgumentException("scale must be 1, 2, 4 or 8: " + scale);
+        this.scale = scale;
+        this.maxSize = 0;
+        return this;
+    }
+
+    /**
+     * Picks the biggest reduction that keeps the longest side of the image at least maxSize pixels,
+     * so the caller only has to resize down. Only JPEG and PNG headers are read, other formats are decoded at full size.
+     */
+    public DecodeOptions setMaxSize(final int maxSize)
+    {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        this.maxSize = maxSize;
+        this.scale = 1;
+        return this;
+    }
+
+    public int getMaxSize() { return maxSize; }
+
+    public int getScale() { return scale; }
+
+    /**
+     * @return the reduction factor to use for the compressed image in data.
+     */
+    public int getScale(final ChannelBuffer data)
+    {
+        if (maxSize == 0)
+            return scale;
+        int[] size = readSize(data);
+        if (size == null)
+            return 1;
+        int longest = Math.max(size[0], size[1]);
+        int result = 1;
+        while (result < 8 && longest / (result * 2) >= maxSize)
+            result *= 2;
+        return result;
+    }
+
+    /**
+     * Reads the width and height from a JPEG or PNG header.
+     * @return {width, height}, or null if the size is not found.
+     */
+    static protected int[] readSize(final ChannelBuffer data)
+    {
+        int start = data.readerIndex();
+        int end = data.writerIndex();
+        if (end - start >= 24 && data.getUnsignedByte(start) == 0x89 && data.getUnsignedByte(start + 1) == 'P')
+        {
+            // PNG: the IHDR chunk comes first, big endian.
+            return new int[]{readInt(data, start + 16), readInt(data, start + 20)};
+        }
+        if (end - start < 4 || data.getUnsignedByte(start) != 0xFF || data.getUnsignedByte(start + 1) != 0xD8)
+            return null;
+        // JPEG: walk the segments until a start of frame marker.
+        int index = start + 2;
+        while (index + 9 <= end)
+        {
+            if (data.getUnsignedByte(index) != 0xFF)
+                return null;
+            int marker = data.getUnsignedByte(index + 1);
+            if (marker == 0xFF) {
+                ++index;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) {
+                index += 2;
+                continue;
+            }
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC)
+                return new int[]{readShort(data, index + 7), readShort(data, index + 5)};
+            index += 2 + readShort(data, index + 2);
+        }
+        return null;
+    }
+
+    // The message buffers are little endian, image headers are big endian.
+    static protected int readShort(final ChannelBuffer data, final int index)
+    {
+        return (data.getUnsignedByte(index) << 8) | data.getUnsignedByte(index + 1);
+    }
+
+    static protected int readInt(final ChannelBuffer data, final int index)
+    {
+        return (readShort(data, index) << 16) | readShort(data, index + 2);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2015, Tal Regev
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Android Sensors Driver nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cv_bridge;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import sensor_msgs.Image;
+
+/**
+ * Converts depth images between 16UC1, in units such as millimetres, and 32FC1 in metres.
+ * 16UC1 -> 32FC1 goes through a 65536 entries table built once, 0 (no measure) becomes invalidValue, NaN by default.
+ * 32FC1 -> 16UC1 rounds, NaN, infinite, non positive and too far values become 0.
+ * The Java API only copies whole rows in and out of a Mat, so each row goes through a Java array once.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class DepthConversion
+{
+    // 16 bits depth images are in millimetres by convention.
+    public static final float MILLIMETRES = 0.001f;
+
+    protected static DepthConversion defaultConversion = null;
+    // Per thread row arrays, kept while the width of the images stays the same.
+    protected static final ThreadLocal<RowArrays> ROW_ARRAYS = new ThreadLocal<RowArrays>() {
+        @Override
+        protected RowArrays initialValue() { return new RowArrays(); }
+    };
+
+    protected final float scale;
+    protected final float invalidValue;
+    protected final float[] lut = new float[65536];
+
+    /**
+     * @param scale the size in metres of one unit of the 16 bits image.
+     * @param invalidValue the float value of a 0 in the 16 bits image.
+     */
+    public DepthConversion(final float scale, final float invalidValue)
+    {
+        if (!(scale > 0))
+            throw new IllegalArgumentException("scale must be positive: " + scale);
+        this.scale = scale;
+        this.invalidValue = invalidValue;
+        lut[0] = invalidValue;
+        for (int i = 1; i < lut.length; ++i)
+            lut[i] = i * scale;
+    }
+
+    /**
+     * Millimetres to metres, 0 becomes NaN. The table is shared by all the callers.
+     */
+    public static synchronized DepthConversion getDefault()
+    {
+        if (defaultConversion == null)
+            defaultConversion = new DepthConversion(MILLIMETRES, Float.NaN);
+        return defaultConversion;
+    }
+
+    public float getScale() { return scale; }
+
+    public float getInvalidValue() { return invalidValue; }
+
+    /**
+     * @param source a 16UC1 Mat.
+     * @return a 32FC1 Mat, taken from pool if there is one.
+     */
+    public Mat toFloat(final Mat source, final MatPool pool)
+    {
+        Mat output = MatPool.acquire(pool, source.rows(), source.cols(), CvType.CV_32FC1);
+        RowArrays arrays = RowArrays.get(source.cols());
+        short[] src_row = arrays.shorts;
+        float[] dst_row = arrays.floats;
+        for (int row = 0; row < source.rows(); ++row)
+        {
+            source.get(row, 0, src_row);
+            for (int col = 0; col < src_row.length; ++col)
+                dst_row[col] = lut[src_row[col] & 0xFFFF];
+            output.put(row, 0, dst_row);
+        }
+        return output;
+    }
+
+    /**
+     * Same as toFloat(Mat, MatPool), reading the pixels straight from a 16 bits, one channel message.
+     */
+    public Mat toFloat(final Image source, final MatPool pool) throws Exception
+    {
+        ChannelBuffer data = source.getData();
+        int step = CvImage.getStep(source, source.getWidth() * 2);
+        int offset = data.readerIndex();
+        ByteOrder order = CvImage.getByteOrder(source);
+        int rows = source.getHeight();
+        int cols = source.getWidth();
+        Mat output = MatPool.acquire(pool, rows, cols, CvType.CV_32FC1);
+        if (rows == 0)
+            return output;
+        float[] dst_row = RowArrays.get(cols).floats;
+        ByteBuffer src = data.toByteBuffer(offset, (rows - 1) * step + cols * 2).slice().order(order);
+        for (int row = 0; row < rows; ++row)
+        {
+            int index = row * step;
+            for (int col = 0; col < cols; ++col, index += 2)
+                dst_row[col] = lut[src.getShort(index) & 0xFFFF];
+            output.put(row, 0, dst_row);
+        }
+        return output;
+    }
+
+    /**
+     * @param source a 32FC1 Mat.
+     * @return a 16UC1 Mat, taken from pool if there is one.
+     */
+    public Mat toShort(final Mat source, final MatPool pool)
+    {
+        Mat output = MatPool.acquire(pool, source.rows(), source.cols(), CvType.CV_16UC1);
+        RowArrays arrays = RowArrays.get(source.cols());
+        float[] src_row = arrays.floats;
+        short[] dst_row = arrays.shorts;
+        for (int row = 0; row < source.rows(); ++row)
+        {
+            source.get(row, 0, src_row);
+            for (int col = 0; col < src_row.length; ++col)
+                dst_row[col] = toShort(src_row[col]);
+            output.put(row, 0, dst_row);
+        }
+        return output;
+    }
+
+    protected short toShort(final float value)
+    {
+        float units = value / scale + 0.5f;
+        // Also false for NaN.
+        if (!(units >= 1.f && units < 65536.f))
+            return 0;
+        return (short) (int) units;
+    }
+
+    /**
+     * One row of each depth. Mat.get and Mat.put copy as many pixels as the array holds, so they have the row length.
+     */
+    protected static class RowArrays
+    {
+        protected short[] shorts = new short[0];
+        protected float[] floats = new float[0];
+
+        protected static RowArrays get(final int cols)
+        {
+            RowArrays arrays = ROW_ARRAYS.get();
+            if (arrays.shorts.length != cols)
+            {
+                arrays.shorts = new short[cols];
+                arrays.floats = new float[cols];
+            }
+            return arrays;
+        }
+    }
+}
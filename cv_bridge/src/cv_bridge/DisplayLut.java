@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2015, Tal Regev
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Android Sensors Driver nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cv_bridge;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A 256 entries BGR table that maps an 8 bits value to its display color, built once for each
+ * (range, colormap) and kept in a small cache that drops the oldest table first. For 8 bits images the
+ * scaling to the range is in the table, so showing a frame is a gray to BGR copy and one table pass in place;
+ * other depths are scaled by one convertTo first.
+ */
+@SuppressWarnings({"Convert2Diamond", "WeakerAccess"})
+public class DisplayLut
+{
+    protected static final int CACHE_SIZE = 16;
+    // Read without a lock, tables are only added and dropped under the class lock.
+    protected static final ConcurrentMap<Key, DisplayLut> LUTS = new ConcurrentHashMap<Key, DisplayLut>();
+    // The keys of LUTS, oldest first.
+    protected static final Queue<Key> BUILT = new ArrayDeque<Key>();
+    // The 8 bits image and the mask of the calling thread.
+    protected static final ThreadLocal<Mat[]> SCRATCH = new ThreadLocal<Mat[]>() {
+        @Override
+        protected Mat[] initialValue() { return new Mat[]{new Mat(), new Mat()}; }
+    };
+
+    // 256x1 CV_8UC3.
+    protected final Mat lut;
+
+    protected DisplayLut(final Mat lut)
+    {
+        this.lut = lut;
+    }
+
+    protected static final class Key
+    {
+        protected final double min;
+        protected final double max;
+        protected final int colormap;
+
+        protected Key(final double min, final double max, final int colormap)
+        {
+            this.min = min;
+            this.max = max;
+            this.colormap = colormap;
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return Double.compare(min, key.min) == 0 && Double.compare(max, key.max) == 0 && colormap == key.colormap;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            long bits = Double.doubleToLongBits(min) * 31 + Double.doubleToLongBits(max);
+            return (int) (bits ^ (bits >>> 32)) * 31 + colormap;
+        }
+    }
+
+    static public DisplayLut get(final double min, final double max, final int colormap)
+    {
+        Key key = new Key(min, max, colormap);
+        DisplayLut displayLut = LUTS.get(key);
+        return displayLut != null ? displayLut : put(key);
+    }
+
+    static protected synchronized DisplayLut put(final Key key)
+    {
+        DisplayLut displayLut = LUTS.get(key);
+        if (displayLut == null) {
+            displayLut = create(key.min, key.max, key.colormap);
+            LUTS.put(key, displayLut);
+            BUILT.add(key);
+            // A dropped table may still be in use by another thread, it is left to the garbage collector.
+            if (BUILT.size() > CACHE_SIZE)
+                LUTS.remove(BUILT.remove());
+        }
+        return displayLut;
+    }
+
+    static protected DisplayLut create(final double min, final double max, final int colormap)
+    {
+        Mat ramp = new Mat(256, 1, CvType.CV_8UC1);
+        byte[] values = new byte[256];
+        for (int i = 0; i < values.length; ++i)
+            values[i] = (byte) i;
+        ramp.put(0, 0, values);
+
+        Mat colors = new Mat();
+        if (colormap == DisplayOptions.NO_COLORMAP)
+            Imgproc.cvtColor(ramp, colors, Imgproc.COLOR_GRAY2BGR);
+        else
+            Imgproc.applyColorMap(ramp, colors, colormap);
+        ramp.release();
+
+        byte[] color_bytes = new byte[256 * 3];
+        colors.get(0, 0, color_bytes);
+        byte[] lut_bytes = new byte[256 * 3];
+        double alpha = 255 / (max - min);
+        for (int i = 0; i < 256; ++i) {
+            int index = (int) Math.round(Math.min(255, Math.max(0, (i - min) * alpha)));
+            System.arraycopy(color_bytes, index * 3, lut_bytes, i * 3, 3);
+        }
+        colors.put(0, 0, lut_bytes);
+        return new DisplayLut(colors);
+    }
+
+    // applyColorMap would also copy source first. LUT maps n channels with an n channels table, not one to three.
+    public void apply(final Mat source, final Mat output)
+    {
+        Imgproc.cvtColor(source, output, Imgproc.COLOR_GRAY2BGR);
+        Core.LUT(output, lut, output);
+    }
+
+    /**
+     * Maps a one channel image to a CV_8UC3 BGR image, taken from pool if there is one.
+     * @param cache_range false when the range changes with every image, so it is not put in the cached tables.
+     */
+    static public Mat toBgr(final Mat source, final double[] range, final int colormap,
+                            final boolean cache_range, final MatPool pool)
+    {
+        Mat output = MatPool.acquire(pool, source.rows(), source.cols(), CvType.CV_8UC3);
+        if (cache_range && source.depth() == CvType.CV_8U) {
+            get(range[0], range[1], colormap).apply(source, output);
+            return output;
+        }
+        Mat scaled = SCRATCH.get()[0];
+        double alpha = 255 / (range[1] - range[0]);
+        source.convertTo(scaled, CvType.CV_8U, alpha, -range[0] * alpha);
+        get(0, 255, colormap).apply(scaled, output);
+        return output;
+    }
+
+    /**
+     * @return {min, max} of a one channel image, NaN excluded, or {0, 1} if it has no value.
+     */
+    static public double[] findRange(final Mat source)
+    {
+        Core.MinMaxLocResult result;
+        if (source.depth() == CvType.CV_32F || source.depth() == CvType.CV_64F) {
+            Mat mask = SCRATCH.get()[1];
+            // NaN is the only value not equal to itself.
+            Core.compare(source, source, mask, Core.CMP_EQ);
+            if (Core.countNonZero(mask) == 0)
+                return new double[]{0, 1};
+            result = Core.minMaxLoc(source, mask);
+        }
+        else
+            result = Core.minMaxLoc(source);
+        if (!(result.minVal < result.maxVal))
+            return new double[]{result.minVal, result.minVal + 1};
+        return new double[]{result.minVal, result.maxVal};
+    }
+
+    /**
+     * Gives each value of a one channel integer image its own color, background in black.
+     * @return a CV_8UC3 BGR image, taken from pool if there is one.
+     */
+    static public Mat labelsToBgr(final Mat source, final int background, final MatPool pool)
+    {
+        Mat labels = source;
+        if (source.type() != CvType.CV_32SC1) {
+            labels = SCRATCH.get()[0];
+            source.convertTo(labels, CvType.CV_32S);
+        }
+        Mat output = MatPool.acquire(pool, source.rows(), source.cols(), CvType.CV_8UC3);
+        int[] label_row = new int[source.cols()];
+        byte[] color_row = new byte[source.cols() * 3];
+        for (int row = 0; row < source.rows(); ++row) {
+            labels.get(row, 0, label_row);
+            for (int col = 0; col < label_row.length; ++col)
+                putLabelColor(label_row[col], background, color_row, col * 3);
+            output.put(row, 0, color_row);
+        }
+        return output;
+    }
+
+    static protected void putLabelColor(final int label, final int background, final byte[] bgr, final int offset)
+    {
+        if (label == background) {
+            bgr[offset] = bgr[offset + 1] = bgr[offset + 2] = 0;
+            return;
+        }
+        // Spreads consecutive labels far apart, the same label always gets the same color.
+        int hash = label * 0x9E3779B1;
+        bgr[offset] = (byte) (hash >>> 24);
+        bgr[offset + 1] = (byte) (hash >>> 16);
+        bgr[offset + 2] = (byte) (hash >>> 8);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2015, Tal Regev
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Android Sensors Driver nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cv_bridge;
+
+import sensor_msgs.EncodingInfo;
+import sensor_msgs.ImageEncodings;
+
+/**
+ * Parameters for CvImage.cvtColorForDisplay, as in the C++ CvtColorForDisplayOptions.
+ * The range and the colormap apply to one channel images, color images are only converted.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class DisplayOptions
+{
+    // Shows a one channel image in gray.
+    public static final int NO_COLORMAP = -1;
+
+    protected boolean dynamicScaling = false;
+    protected double minValue = 0;
+    protected double maxValue = 0;
+    protected int colormap = NO_COLORMAP;
+    protected boolean labels = false;
+    protected int backgroundLabel = -1;
+
+    /**
+     * Values at or below min are shown as the lowest color, values at or above max as the highest.
+     */
+    public DisplayOptions setRange(final double min, final double max)
+    {
+        if (!(min < max))
+            throw new IllegalArgumentException("min must be less than max: " + min + ", " + max);
+        this.minValue = min;
+        this.maxValue = max;
+        this.dynamicScaling = false;
+        return this;
+    }
+
+    /**
+     * Takes the range of each image from its own minimum and maximum, NaN excluded.
+     */
+    public DisplayOptions setDynamicScaling(final boolean dynamicScaling)
+    {
+        this.dynamicScaling = dynamicScaling;
+        return this;
+    }
+
+    /**
+     * @param colormap an Imgproc.COLORMAP_* value, or NO_COLORMAP.
+     */
+    public DisplayOptions setColormap(final int colormap)
+    {
+        this.colormap = colormap;
+        return this;
+    }
+
+    /**
+     * Gives each value of a one channel image its own color. 32SC1 images are always shown as labels.
+     */
+    public DisplayOptions setLabels(final boolean labels)
+    {
+        this.labels = labels;
+        return this;
+    }
+
+    /**
+     * The label shown in black.
+     */
+    public DisplayOptions setBackgroundLabel(final int backgroundLabel)
+    {
+        this.backgroundLabel = backgroundLabel;
+        return this;
+    }
+
+    public boolean isDynamicScaling() { return dynamicScaling; }
+
+    public int getColormap() { return colormap; }
+
+    public boolean isLabels() { return labels; }
+
+    public int getBackgroundLabel() { return backgroundLabel; }
+
+    /**
+     * @return {min, max} set with setRange, or else the default range for the encoding:
+     * 0 to 10 metres for depth images, the full range for integers and 0 to 1 for floats.
+     */
+    public double[] getRange(final EncodingInfo info)
+    {
+        if (minValue < maxValue)
+            return new double[]{minValue, maxValue};
+        if (ImageEncodings.TYPE_16UC1.equals(info.name))
+            return new double[]{0, 10000};
+        if (ImageEncodings.TYPE_32FC1.equals(info.name))
+            return new double[]{0, 10};
+        switch (info.cvDepth)
+        {
+            case EncodingInfo.CV_8U:
+                return new double[]{0, 255};
+            case EncodingInfo.CV_8S:
+                return new double[]{Byte.MIN_VALUE, Byte.MAX_VALUE};
+            case EncodingInfo.CV_16U:
+                return new double[]{0, 65535};
+            case EncodingInfo.CV_16S:
+                return new double[]{Short.MIN_VALUE, Short.MAX_VALUE};
+            case EncodingInfo.CV_32S:
+                return new double[]{Integer.MIN_VALUE, Integer.MAX_VALUE};
+            default:
+                return new double[]{0, 1};
+        }
+    }
+}
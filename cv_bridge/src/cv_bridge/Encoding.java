@@ -29,23 +29,21 @@
 
 package cv_bridge;
 
-import android.util.Pair;
 import android.util.SparseArray;
 
-import org.opencv.core.CvType;
 import org.opencv.imgproc.Imgproc;
 
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Vector;
 
+import sensor_msgs.EncodingInfo;
 import sensor_msgs.ImageEncodings;
 
 
 //from http://stackoverflow.com/questions/11047756/getting-enum-associated-with-int-value
 @SuppressWarnings({"Convert2Diamond", "WeakerAccess"})
-public enum Encoding { INVALID(-1), GRAY(0), RGB(1), BGR(2), RGBA(3), BGRA(4), YUV422(5), BAYER_RGGB(6), BAYER_BGGR(7), BAYER_GBRG(8), BAYER_GRBG(9);
+public enum Encoding { INVALID(-1), GRAY(0), RGB(1), BGR(2), RGBA(3), BGRA(4), YUV422(5), BAYER_RGGB(6), BAYER_BGGR(7), BAYER_GBRG(8), BAYER_GRBG(9),
+    YUYV(10), NV21(11), NV12(12), I420(13);
     protected int encodingNumber;
 
     private static SparseArray<Encoding> map = new SparseArray<Encoding>();
@@ -67,68 +65,29 @@ class ImEncoding
 {
     protected static final int SAME_FORMAT = -1;
 
-    static int getCvType(final String enc) throws Exception {
-
-        String encoding = enc.toLowerCase();
-
-        if (encoding.equals(ImageEncodings.BGR8))   return CvType.CV_8UC3;
-        if (encoding.equals(ImageEncodings.MONO8))  return CvType.CV_8UC1;
-        if (encoding.equals(ImageEncodings.RGB8))   return CvType.CV_8UC3;
-        if (encoding.equals(ImageEncodings.MONO16)) return CvType.CV_16UC1;
-        if (encoding.equals(ImageEncodings.BGR16))  return CvType.CV_16UC3;
-        if (encoding.equals(ImageEncodings.RGB16))  return CvType.CV_16UC3;
-        if (encoding.equals(ImageEncodings.BGRA8))  return CvType.CV_8UC4;
-        if (encoding.equals(ImageEncodings.RGBA8))  return CvType.CV_8UC4;
-        if (encoding.equals(ImageEncodings.BGRA16)) return CvType.CV_16UC4;
-        if (encoding.equals(ImageEncodings.RGBA16)) return CvType.CV_16UC4;
-
-        // For bayer, return one-channel
-        if (encoding.equals(ImageEncodings.BAYER_RGGB8)) return CvType.CV_8UC1;
-        if (encoding.equals(ImageEncodings.BAYER_BGGR8)) return CvType.CV_8UC1;
-        if (encoding.equals(ImageEncodings.BAYER_GBRG8)) return CvType.CV_8UC1;
-        if (encoding.equals(ImageEncodings.BAYER_GRBG8)) return CvType.CV_8UC1;
-        if (encoding.equals(ImageEncodings.BAYER_RGGB16)) return CvType.CV_16UC1;
-        if (encoding.equals(ImageEncodings.BAYER_BGGR16)) return CvType.CV_16UC1;
-        if (encoding.equals(ImageEncodings.BAYER_GBRG16)) return CvType.CV_16UC1;
-        if (encoding.equals(ImageEncodings.BAYER_GRBG16)) return CvType.CV_16UC1;
-
-        // Miscellaneous
-        if (encoding.equals(ImageEncodings.YUV422)) return CvType.CV_8UC2;
-
-
-        encoding = encoding.toUpperCase();
-
-        //macro code
-        if (encoding.equals(ImageEncodings.TYPE_8UC1)) return CvType.CV_8UC1;
-        if (encoding.equals(ImageEncodings.TYPE_8UC2)) return CvType.CV_8UC2;
-        if (encoding.equals(ImageEncodings.TYPE_8UC3)) return CvType.CV_8UC3;
-        if (encoding.equals(ImageEncodings.TYPE_8UC4)) return CvType.CV_8UC4;
-        if (encoding.equals(ImageEncodings.TYPE_8SC1)) return CvType.CV_8SC1;
-        if (encoding.equals(ImageEncodings.TYPE_8SC2)) return CvType.CV_8SC2;
-        if (encoding.equals(ImageEncodings.TYPE_8SC3)) return CvType.CV_8SC3;
-        if (encoding.equals(ImageEncodings.TYPE_8SC4)) return CvType.CV_8SC4;
-        if (encoding.equals(ImageEncodings.TYPE_16UC1)) return CvType.CV_16UC1;
-        if (encoding.equals(ImageEncodings.TYPE_16UC2)) return CvType.CV_16UC2;
-        if (encoding.equals(ImageEncodings.TYPE_16UC3)) return CvType.CV_16UC3;
-        if (encoding.equals(ImageEncodings.TYPE_16UC4)) return CvType.CV_16UC4;
-        if (encoding.equals(ImageEncodings.TYPE_16SC1)) return CvType.CV_16SC1;
-        if (encoding.equals(ImageEncodings.TYPE_16SC2)) return CvType.CV_16SC2;
-        if (encoding.equals(ImageEncodings.TYPE_16SC3)) return CvType.CV_16SC3;
-        if (encoding.equals(ImageEncodings.TYPE_16SC4)) return CvType.CV_16SC4;
-        if (encoding.equals(ImageEncodings.TYPE_32SC1)) return CvType.CV_32SC1;
-        if (encoding.equals(ImageEncodings.TYPE_32SC2)) return CvType.CV_32SC2;
-        if (encoding.equals(ImageEncodings.TYPE_32SC3)) return CvType.CV_32SC3;
-        if (encoding.equals(ImageEncodings.TYPE_32SC4)) return CvType.CV_32SC4;
-        if (encoding.equals(ImageEncodings.TYPE_32FC1)) return CvType.CV_32FC1;
-        if (encoding.equals(ImageEncodings.TYPE_32FC2)) return CvType.CV_32FC2;
-        if (encoding.equals(ImageEncodings.TYPE_32FC3)) return CvType.CV_32FC3;
-        if (encoding.equals(ImageEncodings.TYPE_32FC4)) return CvType.CV_32FC4;
-        if (encoding.equals(ImageEncodings.TYPE_64FC1)) return CvType.CV_64FC1;
-        if (encoding.equals(ImageEncodings.TYPE_64FC2)) return CvType.CV_64FC2;
-        if (encoding.equals(ImageEncodings.TYPE_64FC3)) return CvType.CV_64FC3;
-        if (encoding.equals(ImageEncodings.TYPE_64FC4)) return CvType.CV_64FC4;
-
-        throw new Exception("Unrecognized image encoding [" + encoding + "]");
+    static int getCvType(final String encoding) throws Exception {
+        EncodingInfo info = EncodingInfo.get(encoding);
+        if (info == null)
+            throw new Exception("Unrecognized image encoding [" + encoding + "]");
+        return info.cvType;
+    }
+
+    /**
+     * 4:2:0 images keep their chroma below the Y plane, in a Mat of height * 3 / 2 rows.
+     */
+    static boolean isYuv420(final EncodingInfo info) {
+        return info != null && (info.name.equals(ImageEncodings.NV21) || info.name.equals(ImageEncodings.NV12) ||
+                info.name.equals(ImageEncodings.YUV420));
+    }
+
+    // The rows of the Mat of an image of the given height.
+    static int getMatRows(final EncodingInfo info, final int height) {
+        return isYuv420(info) ? height * 3 / 2 : height;
+    }
+
+    // The height of the image held by a Mat of the given rows.
+    static int getImageHeight(final EncodingInfo info, final int rows) {
+        return isYuv420(info) ? rows * 2 / 3 : rows;
     }
 
     protected static int safeLongToInt(long l) {
@@ -139,137 +98,210 @@ class ImEncoding
         return (int) l;
     }
 
-    protected static Map<Pair<Encoding, Encoding>, Vector<Integer>> getConversionCodes() {
-        Map<Pair<Encoding, Encoding>, Vector<Integer>> res = new HashMap<Pair<Encoding, Encoding>, Vector<Integer>>();
+    // Indexed by [source][destination] Encoding ordinal, built once and never modified afterwards.
+    private static final int[][][] CONVERSION_CODES = new int[Encoding.values().length][Encoding.values().length][];
+    // Same as CONVERSION_CODES, followed by a depth conversion.
+    private static final int[][][] CONVERSION_CODES_WITH_DEPTH = new int[Encoding.values().length][Encoding.values().length][];
+    private static final int[] SAME_FORMAT_CODES = new int[]{SAME_FORMAT};
 
-        for(int i=0; i<=5; ++i) {
-            res.put(new Pair<Encoding, Encoding>(Encoding.valueOf(i), Encoding.valueOf(i)),
-                    new Vector<Integer>(Arrays.asList(new Integer[]{SAME_FORMAT})));
+    static {
+        for (Encoding encoding : Encoding.values()) {
+            if (encoding != Encoding.INVALID)
+                putConversionCode(encoding, encoding, SAME_FORMAT);
         }
 
-        res.put(new Pair<Encoding, Encoding>(Encoding.GRAY, Encoding.RGB),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_GRAY2RGB})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.GRAY, Encoding.BGR),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_GRAY2BGR})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.GRAY, Encoding.RGBA),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_GRAY2RGBA})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.GRAY, Encoding.BGRA),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_GRAY2BGRA})));
-
-        res.put(new Pair<Encoding, Encoding>(Encoding.RGB, Encoding.GRAY),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_RGB2GRAY})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.RGB, Encoding.BGR),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_RGB2BGR})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.RGB, Encoding.RGBA),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_RGB2RGBA})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.RGB, Encoding.BGRA),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_RGB2BGRA})));
-
-        res.put(new Pair<Encoding, Encoding>(Encoding.BGR, Encoding.GRAY),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BGR2GRAY})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.BGR, Encoding.RGB),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BGR2RGB})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.BGR, Encoding.RGBA),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BGR2RGBA})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.BGR, Encoding.BGRA),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BGR2BGRA})));
-
-        res.put(new Pair<Encoding, Encoding>(Encoding.RGBA, Encoding.GRAY),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_RGBA2GRAY})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.RGBA, Encoding.RGB),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_RGBA2RGB})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.RGBA, Encoding.BGR),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_RGBA2BGR})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.RGBA, Encoding.BGRA),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_RGBA2BGRA})));
-
-        res.put(new Pair<Encoding, Encoding>(Encoding.BGRA, Encoding.GRAY),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BGRA2GRAY})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.BGRA, Encoding.RGB),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BGRA2RGB})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.BGRA, Encoding.BGR),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BGRA2BGR})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.BGRA, Encoding.RGBA),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BGRA2RGBA})));
-
-        res.put(new Pair<Encoding, Encoding>(Encoding.YUV422, Encoding.GRAY),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_YUV2GRAY_UYVY})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.YUV422, Encoding.RGB),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_YUV2RGB_UYVY})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.YUV422, Encoding.BGR),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_YUV2BGR_UYVY})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.YUV422, Encoding.RGBA),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_YUV2RGBA_UYVY})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.YUV422, Encoding.BGRA),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_YUV2BGRA_UYVY})));
+        putConversionCode(Encoding.GRAY, Encoding.RGB, Imgproc.COLOR_GRAY2RGB);
+        putConversionCode(Encoding.GRAY, Encoding.BGR, Imgproc.COLOR_GRAY2BGR);
+        putConversionCode(Encoding.GRAY, Encoding.RGBA, Imgproc.COLOR_GRAY2RGBA);
+        putConversionCode(Encoding.GRAY, Encoding.BGRA, Imgproc.COLOR_GRAY2BGRA);
+
+        putConversionCode(Encoding.RGB, Encoding.GRAY, Imgproc.COLOR_RGB2GRAY);
+        putConversionCode(Encoding.RGB, Encoding.BGR, Imgproc.COLOR_RGB2BGR);
+        putConversionCode(Encoding.RGB, Encoding.RGBA, Imgproc.COLOR_RGB2RGBA);
+        putConversionCode(Encoding.RGB, Encoding.BGRA, Imgproc.COLOR_RGB2BGRA);
+
+        putConversionCode(Encoding.BGR, Encoding.GRAY, Imgproc.COLOR_BGR2GRAY);
+        putConversionCode(Encoding.BGR, Encoding.RGB, Imgproc.COLOR_BGR2RGB);
+        putConversionCode(Encoding.BGR, Encoding.RGBA, Imgproc.COLOR_BGR2RGBA);
+        putConversionCode(Encoding.BGR, Encoding.BGRA, Imgproc.COLOR_BGR2BGRA);
+
+        putConversionCode(Encoding.RGBA, Encoding.GRAY, Imgproc.COLOR_RGBA2GRAY);
+        putConversionCode(Encoding.RGBA, Encoding.RGB, Imgproc.COLOR_RGBA2RGB);
+        putConversionCode(Encoding.RGBA, Encoding.BGR, Imgproc.COLOR_RGBA2BGR);
+        putConversionCode(Encoding.RGBA, Encoding.BGRA, Imgproc.COLOR_RGBA2BGRA);
+
+        putConversionCode(Encoding.BGRA, Encoding.GRAY, Imgproc.COLOR_BGRA2GRAY);
+        putConversionCode(Encoding.BGRA, Encoding.RGB, Imgproc.COLOR_BGRA2RGB);
+        putConversionCode(Encoding.BGRA, Encoding.BGR, Imgproc.COLOR_BGRA2BGR);
+        putConversionCode(Encoding.BGRA, Encoding.RGBA, Imgproc.COLOR_BGRA2RGBA);
+
+        putConversionCode(Encoding.YUV422, Encoding.GRAY, Imgproc.COLOR_YUV2GRAY_UYVY);
+        putConversionCode(Encoding.YUV422, Encoding.RGB, Imgproc.COLOR_YUV2RGB_UYVY);
+        putConversionCode(Encoding.YUV422, Encoding.BGR, Imgproc.COLOR_YUV2BGR_UYVY);
+        putConversionCode(Encoding.YUV422, Encoding.RGBA, Imgproc.COLOR_YUV2RGBA_UYVY);
+        putConversionCode(Encoding.YUV422, Encoding.BGRA, Imgproc.COLOR_YUV2BGRA_UYVY);
+
+        putConversionCode(Encoding.YUYV, Encoding.GRAY, Imgproc.COLOR_YUV2GRAY_YUY2);
+        putConversionCode(Encoding.YUYV, Encoding.RGB, Imgproc.COLOR_YUV2RGB_YUY2);
+        putConversionCode(Encoding.YUYV, Encoding.BGR, Imgproc.COLOR_YUV2BGR_YUY2);
+        putConversionCode(Encoding.YUYV, Encoding.RGBA, Imgproc.COLOR_YUV2RGBA_YUY2);
+        putConversionCode(Encoding.YUYV, Encoding.BGRA, Imgproc.COLOR_YUV2BGRA_YUY2);
+
+        // 4:2:0 images, the Mat has height * 3 / 2 rows.
+        putConversionCode(Encoding.NV21, Encoding.GRAY, Imgproc.COLOR_YUV2GRAY_NV21);
+        putConversionCode(Encoding.NV21, Encoding.RGB, Imgproc.COLOR_YUV2RGB_NV21);
+        putConversionCode(Encoding.NV21, Encoding.BGR, Imgproc.COLOR_YUV2BGR_NV21);
+        putConversionCode(Encoding.NV21, Encoding.RGBA, Imgproc.COLOR_YUV2RGBA_NV21);
+        putConversionCode(Encoding.NV21, Encoding.BGRA, Imgproc.COLOR_YUV2BGRA_NV21);
+
+        putConversionCode(Encoding.NV12, Encoding.GRAY, Imgproc.COLOR_YUV2GRAY_NV12);
+        putConversionCode(Encoding.NV12, Encoding.RGB, Imgproc.COLOR_YUV2RGB_NV12);
+        putConversionCode(Encoding.NV12, Encoding.BGR, Imgproc.COLOR_YUV2BGR_NV12);
+        putConversionCode(Encoding.NV12, Encoding.RGBA, Imgproc.COLOR_YUV2RGBA_NV12);
+        putConversionCode(Encoding.NV12, Encoding.BGRA, Imgproc.COLOR_YUV2BGRA_NV12);
+
+        putConversionCode(Encoding.I420, Encoding.GRAY, Imgproc.COLOR_YUV2GRAY_I420);
+        putConversionCode(Encoding.I420, Encoding.RGB, Imgproc.COLOR_YUV2RGB_I420);
+        putConversionCode(Encoding.I420, Encoding.BGR, Imgproc.COLOR_YUV2BGR_I420);
+        putConversionCode(Encoding.I420, Encoding.RGBA, Imgproc.COLOR_YUV2RGBA_I420);
+        putConversionCode(Encoding.I420, Encoding.BGRA, Imgproc.COLOR_YUV2BGRA_I420);
+
+        putConversionCode(Encoding.RGB, Encoding.I420, Imgproc.COLOR_RGB2YUV_I420);
+        putConversionCode(Encoding.BGR, Encoding.I420, Imgproc.COLOR_BGR2YUV_I420);
+        putConversionCode(Encoding.RGBA, Encoding.I420, Imgproc.COLOR_RGBA2YUV_I420);
+        putConversionCode(Encoding.BGRA, Encoding.I420, Imgproc.COLOR_BGRA2YUV_I420);
 
         // Deal with Bayer
-        res.put(new Pair<Encoding, Encoding>(Encoding.BAYER_RGGB, Encoding.GRAY),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BayerBG2GRAY})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.BAYER_RGGB, Encoding.RGB),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BayerBG2RGB})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.BAYER_RGGB, Encoding.BGR),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BayerBG2BGR})));
-
-        res.put(new Pair<Encoding, Encoding>(Encoding.BAYER_BGGR, Encoding.GRAY),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BayerRG2GRAY})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.BAYER_BGGR, Encoding.RGB),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BayerRG2RGB})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.BAYER_BGGR, Encoding.BGR),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BayerRG2BGR})));
-
-        res.put(new Pair<Encoding, Encoding>(Encoding.BAYER_GBRG, Encoding.GRAY),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BayerGR2GRAY})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.BAYER_GBRG, Encoding.RGB),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BayerGR2RGB})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.BAYER_GBRG, Encoding.BGR),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BayerGR2BGR})));
-
-        res.put(new Pair<Encoding, Encoding>(Encoding.BAYER_GRBG, Encoding.GRAY),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BayerGB2GRAY})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.BAYER_GRBG, Encoding.RGB),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BayerGB2RGB})));
-        res.put(new Pair<Encoding, Encoding>(Encoding.BAYER_GRBG, Encoding.BGR),
-                new Vector<Integer>(Arrays.asList(new Integer[]{Imgproc.COLOR_BayerGB2BGR})));
+        putConversionCode(Encoding.BAYER_RGGB, Encoding.GRAY, Imgproc.COLOR_BayerBG2GRAY);
+        putConversionCode(Encoding.BAYER_RGGB, Encoding.RGB, Imgproc.COLOR_BayerBG2RGB);
+        putConversionCode(Encoding.BAYER_RGGB, Encoding.BGR, Imgproc.COLOR_BayerBG2BGR);
+        putConversionCode(Encoding.BAYER_RGGB, Encoding.RGBA, Imgproc.COLOR_BayerBG2RGBA);
+        putConversionCode(Encoding.BAYER_RGGB, Encoding.BGRA, Imgproc.COLOR_BayerBG2BGRA);
+
+        putConversionCode(Encoding.BAYER_BGGR, Encoding.GRAY, Imgproc.COLOR_BayerRG2GRAY);
+        putConversionCode(Encoding.BAYER_BGGR, Encoding.RGB, Imgproc.COLOR_BayerRG2RGB);
+        putConversionCode(Encoding.BAYER_BGGR, Encoding.BGR, Imgproc.COLOR_BayerRG2BGR);
+        putConversionCode(Encoding.BAYER_BGGR, Encoding.RGBA, Imgproc.COLOR_BayerRG2RGBA);
+        putConversionCode(Encoding.BAYER_BGGR, Encoding.BGRA, Imgproc.COLOR_BayerRG2BGRA);
+
+        putConversionCode(Encoding.BAYER_GBRG, Encoding.GRAY, Imgproc.COLOR_BayerGR2GRAY);
+        putConversionCode(Encoding.BAYER_GBRG, Encoding.RGB, Imgproc.COLOR_BayerGR2RGB);
+        putConversionCode(Encoding.BAYER_GBRG, Encoding.BGR, Imgproc.COLOR_BayerGR2BGR);
+        putConversionCode(Encoding.BAYER_GBRG, Encoding.RGBA, Imgproc.COLOR_BayerGR2RGBA);
+        putConversionCode(Encoding.BAYER_GBRG, Encoding.BGRA, Imgproc.COLOR_BayerGR2BGRA);
+
+        putConversionCode(Encoding.BAYER_GRBG, Encoding.GRAY, Imgproc.COLOR_BayerGB2GRAY);
+        putConversionCode(Encoding.BAYER_GRBG, Encoding.RGB, Imgproc.COLOR_BayerGB2RGB);
+        putConversionCode(Encoding.BAYER_GRBG, Encoding.BGR, Imgproc.COLOR_BayerGB2BGR);
+        putConversionCode(Encoding.BAYER_GRBG, Encoding.RGBA, Imgproc.COLOR_BayerGB2RGBA);
+        putConversionCode(Encoding.BAYER_GRBG, Encoding.BGRA, Imgproc.COLOR_BayerGB2BGRA);
+    }
 
-        return res;
+    private static void putConversionCode(final Encoding src, final Encoding dst, final int code)
+    {
+        if (code == SAME_FORMAT) {
+            CONVERSION_CODES[src.ordinal()][dst.ordinal()] = SAME_FORMAT_CODES;
+            CONVERSION_CODES_WITH_DEPTH[src.ordinal()][dst.ordinal()] = SAME_FORMAT_CODES;
+        } else {
+            CONVERSION_CODES[src.ordinal()][dst.ordinal()] = new int[]{code};
+            CONVERSION_CODES_WITH_DEPTH[src.ordinal()][dst.ordinal()] = new int[]{code, SAME_FORMAT};
+        }
+    }
+
+    // The edge aware and VNG variants of the bilinear Bayer to rgb and bgr codes.
+    private static final Map<Integer, int[]> DEMOSAIC_CODES = new HashMap<Integer, int[]>();
+
+    static {
+        putDemosaicCodes(Imgproc.COLOR_BayerBG2RGB, Imgproc.COLOR_BayerBG2RGB_EA, Imgproc.COLOR_BayerBG2RGB_VNG);
+        putDemosaicCodes(Imgproc.COLOR_BayerBG2BGR, Imgproc.COLOR_BayerBG2BGR_EA, Imgproc.COLOR_BayerBG2BGR_VNG);
+        putDemosaicCodes(Imgproc.COLOR_BayerRG2RGB, Imgproc.COLOR_BayerRG2RGB_EA, Imgproc.COLOR_BayerRG2RGB_VNG);
+        putDemosaicCodes(Imgproc.COLOR_BayerRG2BGR, Imgproc.COLOR_BayerRG2BGR_EA, Imgproc.COLOR_BayerRG2BGR_VNG);
+        putDemosaicCodes(Imgproc.COLOR_BayerGR2RGB, Imgproc.COLOR_BayerGR2RGB_EA, Imgproc.COLOR_BayerGR2RGB_VNG);
+        putDemosaicCodes(Imgproc.COLOR_BayerGR2BGR, Imgproc.COLOR_BayerGR2BGR_EA, Imgproc.COLOR_BayerGR2BGR_VNG);
+        putDemosaicCodes(Imgproc.COLOR_BayerGB2RGB, Imgproc.COLOR_BayerGB2RGB_EA, Imgproc.COLOR_BayerGB2RGB_VNG);
+        putDemosaicCodes(Imgproc.COLOR_BayerGB2BGR, Imgproc.COLOR_BayerGB2BGR_EA, Imgproc.COLOR_BayerGB2BGR_VNG);
+    }
+
+    private static void putDemosaicCodes(final int code, final int edge_aware_code, final int vng_code)
+    {
+        DEMOSAIC_CODES.put(code, new int[]{edge_aware_code, vng_code});
+    }
+
+    /**
+     * @return the variant of a bilinear Bayer code for demosaic. Only rgb and bgr outputs have variants,
+     * other codes are returned as they are.
+     */
+    protected static int getDemosaicCode(final int code, final ConversionOptions.Demosaic demosaic)
+    {
+        int[] codes = DEMOSAIC_CODES.get(code);
+        if (codes == null || demosaic == ConversionOptions.Demosaic.BILINEAR)
+            return code;
+        return demosaic == ConversionOptions.Demosaic.EDGE_AWARE ? codes[0] : codes[1];
+    }
+
+    private static final Map<EncodingInfo, Encoding> ENCODINGS = new HashMap<EncodingInfo, Encoding>();
+
+    static {
+        // The color codes do not depend on the depth, 16 bits encodings share them with 8 bits ones.
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.MONO8), Encoding.GRAY);
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.BGR8), Encoding.BGR);
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.RGB8), Encoding.RGB);
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.BGRA8), Encoding.BGRA);
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.RGBA8), Encoding.RGBA);
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.YUV422), Encoding.YUV422);
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.YUV422_YUY2), Encoding.YUYV);
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.NV21), Encoding.NV21);
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.NV12), Encoding.NV12);
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.YUV420), Encoding.I420);
+
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.BAYER_RGGB8), Encoding.BAYER_RGGB);
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.BAYER_BGGR8), Encoding.BAYER_BGGR);
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.BAYER_GBRG8), Encoding.BAYER_GBRG);
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.BAYER_GRBG8), Encoding.BAYER_GRBG);
+
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.MONO16), Encoding.GRAY);
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.BGR16), Encoding.BGR);
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.RGB16), Encoding.RGB);
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.BGRA16), Encoding.BGRA);
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.RGBA16), Encoding.RGBA);
+
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.BAYER_RGGB16), Encoding.BAYER_RGGB);
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.BAYER_BGGR16), Encoding.BAYER_BGGR);
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.BAYER_GBRG16), Encoding.BAYER_GBRG);
+        ENCODINGS.put(EncodingInfo.get(ImageEncodings.BAYER_GRBG16), Encoding.BAYER_GRBG);
     }
 
     protected static Encoding getEncoding(final String encoding)
     {
-        String lEncoding = encoding.toLowerCase();
-
-        if (lEncoding.equals(ImageEncodings.MONO8)) return Encoding.GRAY;
-        if (lEncoding.equals(ImageEncodings.BGR8)) return Encoding.BGR;
-        if (lEncoding.equals(ImageEncodings.RGB8)) return Encoding.RGB;
-        if (lEncoding.equals(ImageEncodings.BGRA8)) return Encoding.BGRA;
-        if (lEncoding.equals(ImageEncodings.RGBA8)) return Encoding.RGBA;
-        if (lEncoding.equals(ImageEncodings.YUV422)) return Encoding.YUV422;
-
-        if (lEncoding.equals(ImageEncodings.BAYER_RGGB8)) return Encoding.BAYER_RGGB;
-        if (lEncoding.equals(ImageEncodings.BAYER_BGGR8)) return Encoding.BAYER_BGGR;
-        if (lEncoding.equals(ImageEncodings.BAYER_GBRG8)) return Encoding.BAYER_GBRG;
-        if (lEncoding.equals(ImageEncodings.BAYER_GRBG8)) return Encoding.BAYER_GRBG;
-        
+        EncodingInfo info = EncodingInfo.get(encoding);
+        return info == null ? Encoding.INVALID : getEncoding(info);
+    }
+
+    protected static Encoding getEncoding(final EncodingInfo info)
+    {
+        Encoding encoding = ENCODINGS.get(info);
         // We don't support conversions to/from other types
-        return Encoding.INVALID;
+        return encoding == null ? Encoding.INVALID : encoding;
     }
 
-    protected static Vector<Integer> getConversionCode(String src_encoding, String dst_encoding) throws Exception {
-        Encoding src_encode = getEncoding(src_encoding);
-        Encoding dst_encode = getEncoding(dst_encoding);
+    /**
+     * The returned array is shared between all callers and must not be modified.
+     */
+    protected static int[] getConversionCode(String src_encoding, String dst_encoding) throws Exception {
+        EncodingInfo src_info = EncodingInfo.get(src_encoding);
+        EncodingInfo dst_info = EncodingInfo.get(dst_encoding);
+        if (src_info == null)
+            throw new Exception("Unknown encoding " + src_encoding);
+        if (dst_info == null)
+            throw new Exception("Unknown encoding " + dst_encoding);
 
-        boolean is_src_color_format = ImageEncodings.isColor(src_encoding) ||
-                ImageEncodings.isMono(src_encoding) ||
-                ImageEncodings.isBayer(src_encoding) ||
-            (src_encoding.toLowerCase().equals(ImageEncodings.YUV422));
+        Encoding src_encode = getEncoding(src_info);
+        Encoding dst_encode = getEncoding(dst_info);
 
-        boolean is_dst_color_format = ImageEncodings.isColor(dst_encoding) ||
-                ImageEncodings.isMono(dst_encoding) ||
-                ImageEncodings.isBayer(dst_encoding) ||
-            (dst_encoding.toLowerCase().equals(ImageEncodings.YUV422));
+        boolean is_src_color_format = src_info.family != EncodingInfo.Family.GENERIC;
+        boolean is_dst_color_format = dst_info.family != EncodingInfo.Family.GENERIC;
 
-        boolean is_num_channels_the_same = ImageEncodings.numChannels(src_encoding) == ImageEncodings.numChannels(dst_encoding);
+        boolean is_num_channels_the_same = src_info.numChannels == dst_info.numChannels;
 
         // If we have no color info in the source, we can only convert to the same format which
         // was resolved in the previous condition. Otherwise, fail
@@ -279,7 +311,7 @@ class ImEncoding
                         "] is. The conversion does not make sense");
             if (!is_num_channels_the_same)
                 throw new Exception("[" + src_encoding + "] and [" + dst_encoding + "] do not have the same number of channel");
-            return new Vector<Integer>(1, SAME_FORMAT);
+            return SAME_FORMAT_CODES;
         }
 
         // If we are converting from a color type to a non color type, we can only do so if we stick
@@ -288,22 +320,20 @@ class ImEncoding
             if (!is_num_channels_the_same)
                 throw new Exception("[" + src_encoding + "] is a color format but [" + dst_encoding + "] " +
                         "is not so they must have the same OpenCV type, CV_8UC3, CV16UC1 ....");
-            return new Vector<Integer>(1, SAME_FORMAT);
+            return SAME_FORMAT_CODES;
         }
 
         // If we are converting from a color type to another type, then everything is fine
-        final Map<Pair<Encoding, Encoding>, Vector<Integer>> CONVERSION_CODES = getConversionCodes();
-
-        Pair<Encoding, Encoding> key = new Pair<Encoding, Encoding>(src_encode, dst_encode);
-        Vector<Integer> res = CONVERSION_CODES.get(key);
+        // And deal with depth differences if the colors are different
+        final int[] res;
+        if (src_info.bitDepth != dst_info.bitDepth && (src_encode != dst_encode))
+            res = CONVERSION_CODES_WITH_DEPTH[src_encode.ordinal()][dst_encode.ordinal()];
+        else
+            res = CONVERSION_CODES[src_encode.ordinal()][dst_encode.ordinal()];
 
         if (res == null)
             throw new Exception("Unsupported conversion from [" + src_encoding +
                     "] to [" + dst_encoding + "]");
-
-        // And deal with depth differences if the colors are different
-        if (ImageEncodings.bitDepth(src_encoding) != ImageEncodings.bitDepth(dst_encoding) && (getEncoding(src_encoding) != getEncoding(dst_encoding)))
-            res.add(SAME_FORMAT);
         return res;
     }
 }
\ No newline at end of file
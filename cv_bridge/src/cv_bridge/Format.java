@@ -39,7 +39,7 @@ import java.util.Map;
 //from http://docs.opencv.org/modules/highgui/doc/reading_and_writing_images_and_video.html#Mat imread(const string& filename, int flags)
 @SuppressWarnings("Convert2Diamond")
 public enum Format { JPG("jpg"), JPEG("jpeg"), JPE("jpe"), PNG("png"), BMP("bmp"), DIB("dib"), PPM("ppm"), PGM("pgm"), PBM("pbm"),
-    JP2("jp2"), SR("sr"), RAS("ras"), TIF("tif"), TIFF("tiff") ; // this formats rviz is not support.
+    JP2("jp2"), SR("sr"), RAS("ras"), TIF("tif"), TIFF("tiff"), WEBP("webp") ; // this formats rviz is not support.
     protected String strFormat;
 
     static private Map<Format, String> map = new HashMap<Format, String>();
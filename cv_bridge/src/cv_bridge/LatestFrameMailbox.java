@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2015, Tal Regev
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Android Sensors Driver nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cv_bridge;
+
+import org.ros.message.MessageListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A MessageListener that keeps only the newest message and hands it to listener on a single worker thread.
+ * Messages that arrive while the worker is busy replace the waiting one and are dropped without being decoded,
+ * so a slow listener sees fresh frames instead of a growing backlog.
+ * Works with Image, CompressedImage or any other message type.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class LatestFrameMailbox<T> implements MessageListener<T>
+{
+    protected final MessageListener<T> listener;
+    protected final AtomicLong dropped = new AtomicLong();
+    protected final AtomicLong processed = new AtomicLong();
+    protected final AtomicLong errors = new AtomicLong();
+    // Guarded by this.
+    protected T pending = null;
+    protected Thread worker = null;
+
+    public LatestFrameMailbox(final MessageListener<T> listener)
+    {
+        this.listener = listener;
+    }
+
+    public synchronized void start()
+    {
+        if (worker != null)
+            return;
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted())
+                        deliver(take());
+                } catch (InterruptedException e) {
+                    // Stopped.
+                }
+            }
+        }, "cv_bridge mailbox");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Stops the worker and waits for it. A waiting message is dropped.
+     */
+    public void shutdown() throws InterruptedException
+    {
+        Thread thread;
+        synchronized (this)
+        {
+            thread = worker;
+            worker = null;
+            pending = null;
+        }
+        if (thread != null)
+        {
+            thread.interrupt();
+            thread.join();
+        }
+    }
+
+    @Override
+    public synchronized void onNewMessage(final T message)
+    {
+        if (pending != null)
+            dropped.incrementAndGet();
+        pending = message;
+        notifyAll();
+    }
+
+    protected synchronized T take() throws InterruptedException
+    {
+        while (pending == null)
+            wait();
+        T message = pending;
+        pending = null;
+        return message;
+    }
+
+    protected void deliver(final T message)
+    {
+        try
+        {
+            listener.onNewMessage(message);
+            processed.incrementAndGet();
+        }
+        catch (RuntimeException e)
+        {
+            errors.incrementAndGet();
+            onError(message, e);
+        }
+    }
+
+    /**
+     * Called on the worker thread when listener throws. Does nothing by default.
+     */
+    protected void onError(final T message, final RuntimeException e)
+    {
+    }
+
+    /**
+     * @return the number of messages replaced by a newer one before the worker took them.
+     */
+    public long getDropped() { return dropped.get(); }
+
+    /**
+     * @return the number of messages handed to listener that returned normally.
+     */
+    public long getProcessed() { return processed.get(); }
+
+    public long getErrors() { return errors.get(); }
+
+    public void resetCounters()
+    {
+        dropped.set(0);
+        processed.set(0);
+        errors.set(0);
+    }
+}
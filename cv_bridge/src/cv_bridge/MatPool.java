@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2015, Tal Regev
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Android Sensors Driver nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cv_bridge;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * A bounded pool of Mats keyed by (rows, cols, type).
+ * A Mat taken with acquire is owned by the caller until it is given back with release.
+ * Mats that do not fit in the pool are released right away instead of waiting for the finalizer.
+ * Only the Mats the pool allocated are kept, so a Mat wrapping memory the pool does not own, such as
+ * the image of toCvShare, is never handed out again.
+ */
+@SuppressWarnings({"Convert2Diamond", "WeakerAccess", "unused"})
+public class MatPool
+{
+    protected final int capacity;
+    protected final Map<Long, ArrayDeque<Mat>> free = new HashMap<Long, ArrayDeque<Mat>>();
+    // The Mats allocated by acquire, weakly held so that the ones never given back are not kept alive.
+    protected final Set<Mat> allocated = Collections.newSetFromMap(new WeakHashMap<Mat, Boolean>());
+    protected int size = 0;
+    protected long hits = 0;
+    protected long misses = 0;
+
+    /**
+     * @param capacity the maximum number of idle Mats kept by the pool.
+     */
+    public MatPool(final int capacity)
+    {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+        this.capacity = capacity;
+    }
+
+    public synchronized Mat acquire(final int rows, final int cols, final int type)
+    {
+        ArrayDeque<Mat> mats = free.get(key(rows, cols, type));
+        if (mats != null && !mats.isEmpty())
+        {
+            ++hits;
+            --size;
+            return mats.pop();
+        }
+        ++misses;
+        Mat mat = new Mat(rows, cols, type);
+        allocated.add(mat);
+        return mat;
+    }
+
+    /**
+     * Gives a Mat back to the pool. The caller must not use it afterwards.
+     * A Mat the pool did not allocate is released instead of kept.
+     */
+    public synchronized void release(final Mat mat)
+    {
+        if (mat == null)
+            return;
+        if (size >= capacity || !allocated.contains(mat) || mat.empty() || mat.dims() > 2 || !mat.isContinuous())
+        {
+            mat.release();
+            return;
+        }
+        final Long key = key(mat.rows(), mat.cols(), mat.type());
+        ArrayDeque<Mat> mats = free.get(key);
+        if (mats == null)
+        {
+            mats = new ArrayDeque<Mat>();
+            free.put(key, mats);
+        }
+        mats.push(mat);
+        ++size;
+    }
+
+    /**
+     * Releases every idle Mat held by the pool.
+     */
+    public synchronized void clear()
+    {
+        for (ArrayDeque<Mat> mats : free.values())
+        {
+            for (Mat mat : mats)
+                mat.release();
+        }
+        free.clear();
+        size = 0;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public synchronized int getSize()
+    {
+        return size;
+    }
+
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    public synchronized void resetCounters()
+    {
+        hits = 0;
+        misses = 0;
+    }
+
+    static protected Mat acquire(final MatPool pool, final int rows, final int cols, final int type)
+    {
+        return pool == null ? new Mat(rows, cols, type) : pool.acquire(rows, cols, type);
+    }
+
+    static protected void release(final MatPool pool, final Mat mat)
+    {
+        if (pool == null)
+            mat.release();
+        else
+            pool.release(mat);
+    }
+
+    static protected long key(final int rows, final int cols, final int type)
+    {
+        return ((long) rows << 40) | ((long) cols << 16) | (type & 0xFFFF);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2015, Tal Regev
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Android Sensors Driver nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cv_bridge;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.opencv_core;
+import org.bytedeco.javacpp.opencv_core.Mat;
+import org.bytedeco.javacpp.opencv_core.Scalar;
+import org.bytedeco.javacpp.opencv_core.Size;
+import org.bytedeco.javacpp.opencv_imgcodecs;
+import org.bytedeco.javacpp.opencv_imgproc;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.ros.message.MessageFactory;
+import org.ros.node.NodeConfiguration;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import sensor_msgs.CompressedImage;
+import sensor_msgs.ImageEncodings;
+
+/**
+ * Compares decoding a compressed image to mono8 or mono16 with the imdecode flags picked from the
+ * destination encoding, against the previous path: an IMREAD_ANYCOLOR decode followed by a conversion.
+ * The images are smooth noise, which compresses about like a camera frame.
+ * Run with: ./gradlew :cv_bridge_javacv:decodeBenchmark
+ */
+@SuppressWarnings("WeakerAccess")
+public class DecodeBenchmark
+{
+    static final int WARMUP = 20;
+    static final int ITERATIONS = 200;
+
+    public interface Decode
+    {
+        CvImage run(CompressedImage message) throws Exception;
+    }
+
+    static Decode previous(final String dst_encoding) {
+        return new Decode() {
+            @Override
+            public CvImage run(final CompressedImage message) throws Exception {
+                Mat mat = CvImage.matFromImage(message, opencv_imgcodecs.IMREAD_ANYCOLOR);
+                CvImage image = CvImage.toCvCopyImpl(mat, message.getHeader(), CvImage.getDecodedEncoding(mat), dst_encoding);
+                mat.release();
+                return image;
+            }
+        };
+    }
+
+    static Decode current(final String dst_encoding) {
+        return new Decode() {
+            @Override
+            public CvImage run(final CompressedImage message) throws Exception {
+                return CvImage.toCvCopy(message, dst_encoding);
+            }
+        };
+    }
+
+    static CompressedImage compress(final MessageFactory factory, final int width, final int height,
+                                    final int depth, final String extension) {
+        Mat noise = new Mat(height, width, opencv_core.CV_8UC3);
+        opencv_core.randu(noise, new Mat(1, 1, opencv_core.CV_64F, new Scalar(0.0)),
+                new Mat(1, 1, opencv_core.CV_64F, new Scalar(255.0)));
+        Mat image = new Mat();
+        opencv_imgproc.GaussianBlur(noise, image, new Size(0, 0), 3.0);
+        if (depth == opencv_core.CV_16U)
+        {
+            Mat gray = new Mat();
+            opencv_imgproc.cvtColor(image, gray, opencv_imgproc.COLOR_BGR2GRAY);
+            gray.convertTo(image, opencv_core.CV_16U, 257.0, 0.0);
+        }
+        BytePointer buf = new BytePointer();
+        opencv_imgcodecs.imencode(extension, image, buf, new IntPointer(opencv_imgcodecs.IMWRITE_JPEG_QUALITY, 90));
+        byte[] bytes = new byte[(int) buf.capacity()];
+        buf.get(bytes);
+
+        CompressedImage message = factory.newFromType(CompressedImage._TYPE);
+        message.setFormat(extension.substring(1));
+        message.setData(ChannelBuffers.wrappedBuffer(ByteOrder.LITTLE_ENDIAN, bytes));
+        return message;
+    }
+
+    // Median milliseconds per decode.
+    static double measure(final Decode decode, final CompressedImage message) throws Exception {
+        double[] times = new double[ITERATIONS];
+        for (int i = -WARMUP; i < ITERATIONS; ++i)
+        {
+            long start = System.nanoTime();
+            CvImage image = decode.run(message);
+            long time = System.nanoTime() - start;
+            image.image.release();
+            if (i >= 0)
+                times[i] = time / 1e6;
+        }
+        Arrays.sort(times);
+        return times[ITERATIONS / 2];
+    }
+
+    static void compare(final String name, final CompressedImage message, final String dst_encoding) throws Exception {
+        double current = measure(current(dst_encoding), message);
+        String line = String.format("%-28s %7d bytes  current %6.2f ms", name, message.getData().readableBytes(), current);
+        try {
+            double previous = measure(previous(dst_encoding), message);
+            line += String.format("  previous %6.2f ms  x%.2f", previous, previous / current);
+        } catch (Exception e) {
+            // An 8 bits decode cannot always be converted to the destination.
+            line += "  previous failed: " + e.getMessage();
+        }
+        System.out.println(line);
+    }
+
+    public static void main(String[] args) throws Exception {
+        MessageFactory factory = NodeConfiguration.newPrivate().getTopicMessageFactory();
+        compare("720p JPEG -> mono8", compress(factory, 1280, 720, opencv_core.CV_8U, ".jpg"), ImageEncodings.MONO8);
+        compare("1080p JPEG -> mono8", compress(factory, 1920, 1080, opencv_core.CV_8U, ".jpg"), ImageEncodings.MONO8);
+        compare("1080p 16 bits PNG -> mono16", compress(factory, 1920, 1080, opencv_core.CV_16U, ".png"), ImageEncodings.MONO16);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2015, Tal Regev
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Android Sensors Driver nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cv_bridge;
+
+import org.bytedeco.javacpp.opencv_core;
+import org.bytedeco.javacpp.opencv_core.Mat;
+import org.bytedeco.javacpp.opencv_imgproc;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.ros.message.Time;
+import org.ros.node.topic.Publisher;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import sensor_msgs.CompressedImage;
+import sensor_msgs.Image;
+import sensor_msgs.ImageEncodings;
+
+/**
+ * Publishes camera frames in the layout the camera gives them, without a View and without an RGBA conversion.
+ * Raw images are nv21, or mono8 from the Y plane alone. JPEG images are compressed from bgr8 after a
+ * single cvtColor from NV21, or from the Y plane alone for mono.
+ * Frames must come from one thread, the camera callback, as the scratch buffers are not shared.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class CameraPublisher
+{
+    protected final Publisher<Image> imagePublisher;
+    protected final Publisher<CompressedImage> compressedPublisher;
+    protected String frameId = "camera";
+    protected boolean mono = false;
+    protected int jpegQuality = 90;
+    protected final EncodeOptions encodeOptions = new EncodeOptions().setJpegQuality(jpegQuality);
+    // NV21 packing of YUV_420_888 frames.
+    protected byte[] nv21 = null;
+    // The Y plane, or the whole NV21 frame, and its bgr8 conversion.
+    protected Mat yuv = null;
+    protected Mat bgr = new Mat();
+
+    /**
+     * @param imagePublisher publisher of the raw images, or null.
+     * @param compressedPublisher publisher of the JPEG images, or null.
+     */
+    public CameraPublisher(final Publisher<Image> imagePublisher, final Publisher<CompressedImage> compressedPublisher)
+    {
+        this.imagePublisher = imagePublisher;
+        this.compressedPublisher = compressedPublisher;
+    }
+
+    public CameraPublisher setFrameId(final String frameId)
+    {
+        this.frameId = frameId;
+        return this;
+    }
+
+    /**
+     * Publishes only the Y plane, as mono8.
+     */
+    public CameraPublisher setMono(final boolean mono)
+    {
+        this.mono = mono;
+        return this;
+    }
+
+    public CameraPublisher setJpegQuality(final int jpegQuality)
+    {
+        if (jpegQuality < 0 || jpegQuality > 100)
+            throw new IllegalArgumentException("jpegQuality must be in [0, 100]: " + jpegQuality);
+        this.jpegQuality = jpegQuality;
+        encodeOptions.setJpegQuality(jpegQuality);
+        return this;
+    }
+
+    /**
+     * Publishes an NV21 frame, as android.hardware.Camera.PreviewCallback and JavaCameraView get it.
+     * @param data width * height * 3 / 2 bytes, not kept after the call.
+     */
+    public void publishNv21(final byte[] data, final int width, final int height, final Time stamp) throws Exception
+    {
+        int luma_length = width * height;
+        int length = mono ? luma_length : luma_length * 3 / 2;
+        if (data.length < luma_length * 3 / 2)
+            throw new Exception("An NV21 frame of " + width + "x" + height + " needs " + luma_length * 3 / 2 +
+                    " bytes, got " + data.length);
+
+        if (imagePublisher != null)
+        {
+            Image image = imagePublisher.newMessage();
+            image.getHeader().setFrameId(frameId);
+            image.getHeader().setStamp(stamp);
+            image.setEncoding(mono ? ImageEncodings.MONO8 : ImageEncodings.NV21);
+            image.setWidth(width);
+            image.setHeight(height);
+            image.setStep(width);
+            image.setIsBigendian((byte) 0);
+            image.setData(ChannelBuffers.copiedBuffer(ByteOrder.LITTLE_ENDIAN, data, 0, length));
+            imagePublisher.publish(image);
+        }
+
+        if (compressedPublisher != null)
+        {
+            CompressedImage compressed = compressedPublisher.newMessage();
+            compressed.getHeader().setFrameId(frameId);
+            compressed.getHeader().setStamp(stamp);
+            int rows = mono ? height : height * 3 / 2;
+            if (yuv == null || yuv.rows() != rows || yuv.cols() != width)
+                yuv = new Mat(rows, width, opencv_core.CV_8UC1);
+            yuv.data().put(data, 0, length);
+            CvImage cvImage = new CvImage();
+            cvImage.header = compressed.getHeader();
+            if (mono)
+            {
+                cvImage.encoding = ImageEncodings.MONO8;
+                cvImage.image = yuv;
+            }
+            else
+            {
+                opencv_imgproc.cvtColor(yuv, bgr, opencv_imgproc.COLOR_YUV2BGR_NV21);
+                cvImage.encoding = ImageEncodings.BGR8;
+                cvImage.image = bgr;
+            }
+            cvImage.toCompressedImageMsg(compressed, Format.JPG, encodeOptions);
+            if (!mono)
+                compressed.setFormat(ImageEncodings.NV21 + "; jpg compressed " + ImageEncodings.BGR8);
+            compressedPublisher.publish(compressed);
+        }
+    }
+
+    /**
+     * Publishes a YUV_420_888 frame, as android.media.Image planes of a camera2 ImageReader and JavaCamera2View.
+     * The planes are packed into NV21 first, whatever their strides.
+     */
+    public void publishYuv420888(final ByteBuffer y, final int yRowStride,
+                                 final ByteBuffer u, final ByteBuffer v, final int uvRowStride, final int uvPixelStride,
+                                 final int width, final int height, final Time stamp) throws Exception
+    {
+        int length = width * height * 3 / 2;
+        if (nv21 == null || nv21.length != length)
+            nv21 = new byte[length];
+
+        ByteBuffer y_rows = y.duplicate();
+        for (int row = 0; row < height; ++row)
+        {
+            y_rows.position(row * yRowStride);
+            y_rows.get(nv21, row * width, width);
+        }
+        if (!mono)
+        {
+            int offset = width * height;
+            for (int row = 0; row < height / 2; ++row)
+            {
+                int index = row * uvRowStride;
+                for (int col = 0; col < width / 2; ++col, index += uvPixelStride)
+                {
+                    nv21[offset++] = v.get(index);
+                    nv21[offset++] = u.get(index);
+                }
+            }
+        }
+        publishNv21(nv21, width, height, stamp);
+    }
+}
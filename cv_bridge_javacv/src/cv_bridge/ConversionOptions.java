@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2015, Tal Regev
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Android Sensors Driver nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cv_bridge;
+
+/**
+ * Resize and demosaic parameters for CvImage.toCvCopy(Image, String, ConversionOptions, MatPool).
+ * The resize runs on the side of the color conversion with fewer pixels,
+ * so no full resolution color image is made when shrinking.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class ConversionOptions
+{
+    public enum Interpolation {
+        // Best quality when shrinking.
+        AREA,
+        LINEAR,
+        // pyrDown halves the image while it stays bigger than the target, then AREA does the rest.
+        PYR_DOWN
+    }
+
+    /**
+     * How Bayer images are turned into rgb or bgr, from the fastest to the best looking.
+     * Other outputs are always bilinear.
+     */
+    public enum Demosaic {
+        BILINEAR,
+        // Edge aware, 8 or 16 bits.
+        EDGE_AWARE,
+        // Variable number of gradients, 8 bits only.
+        VNG
+    }
+
+    protected int width = 0;
+    protected int height = 0;
+    protected int maxSize = 0;
+    protected Interpolation interpolation = Interpolation.AREA;
+    protected Demosaic demosaic = Demosaic.BILINEAR;
+
+    public ConversionOptions setSize(final int width, final int height)
+    {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("size must be positive: " + width + "x" + height);
+        this.width = width;
+        this.height = height;
+        this.maxSize = 0;
+        return this;
+    }
+
+    /**
+     * Shrinks the image so its longest side is at most maxSize, keeping the aspect ratio. Smaller images are kept as is.
+     */
+    public ConversionOptions setMaxSize(final int maxSize)
+    {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        this.maxSize = maxSize;
+        this.width = 0;
+        this.height = 0;
+        return this;
+    }
+
+    public ConversionOptions setInterpolation(final Interpolation interpolation)
+    {
+        this.interpolation = interpolation;
+        return this;
+    }
+
+    public ConversionOptions setDemosaic(final Demosaic demosaic)
+    {
+        this.demosaic = demosaic;
+        return this;
+    }
+
+    public Interpolation getInterpolation() { return interpolation; }
+
+    public Demosaic getDemosaic() { return demosaic; }
+
+    public int getMaxSize() { return maxSize; }
+
+    /**
+     * @return {width, height} of the result for a cols x rows image.
+     */
+    public int[] getSize(final int cols, final int rows)
+    {
+        if (width > 0)
+            return new int[]{width, height};
+        int longest = Math.max(cols, rows);
+        if (maxSize == 0 || longest <= maxSize)
+            return new int[]{cols, rows};
+        return new int[]{Math.max(1, (int) ((long) cols * maxSize / longest)),
+                Math.max(1, (int) ((long) rows * maxSize / longest))};
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2015, Tal Regev
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Android Sensors Driver nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cv_bridge;
+
+import org.bytedeco.javacpp.opencv_core;
+import org.bytedeco.javacpp.opencv_core.Mat;
+import org.bytedeco.javacpp.opencv_imgproc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import sensor_msgs.EncodingInfo;
+
+/**
+ * The steps that convert an image from one encoding to another, built once for each pair of encodings.
+ * A step is either a cvtColor, or a convertTo that also does the scaling between 8 and 16 bits.
+ * Intermediate results are written to two scratch Mats of the calling thread, used in turn,
+ * only the result is a new Mat.
+ */
+@SuppressWarnings({"Convert2Diamond", "WeakerAccess"})
+public class ConversionPlan
+{
+    // One plan for each Demosaic mode, the modes only differ for Bayer sources.
+    // Lookups take no lock, two threads may build the same plan once and keep the first one.
+    protected static final ConcurrentMap<EncodingInfo, ConcurrentMap<EncodingInfo, AtomicReferenceArray<ConversionPlan>>> PLANS =
+            new ConcurrentHashMap<EncodingInfo, ConcurrentMap<EncodingInfo, AtomicReferenceArray<ConversionPlan>>>();
+    protected static final ThreadLocal<Mat[]> SCRATCH = new ThreadLocal<Mat[]>() {
+        @Override
+        protected Mat[] initialValue() { return new Mat[]{new Mat(), new Mat()}; }
+    };
+
+    // A cvtColor code, or ImEncoding.SAME_FORMAT for a convertTo.
+    protected final int[] codes;
+    // The output type of each step.
+    protected final int[] types;
+    // The scale of the convertTo step.
+    protected final double alpha;
+    protected final EncodingInfo src_info;
+    protected final EncodingInfo dst_info;
+
+    protected ConversionPlan(final EncodingInfo src_info, final EncodingInfo dst_info,
+                             final int[] codes, final int[] types, final double alpha)
+    {
+        this.src_info = src_info;
+        this.dst_info = dst_info;
+        this.codes = codes;
+        this.types = types;
+        this.alpha = alpha;
+    }
+
+    static public ConversionPlan get(final String src_encoding, final String dst_encoding) throws Exception
+    {
+        return get(src_encoding, dst_encoding, ConversionOptions.Demosaic.BILINEAR);
+    }
+
+    static public ConversionPlan get(final String src_encoding, final String dst_encoding,
+                                     final ConversionOptions.Demosaic demosaic) throws Exception
+    {
+        EncodingInfo src_info = EncodingInfo.get(src_encoding);
+        EncodingInfo dst_info = EncodingInfo.get(dst_encoding);
+        if (src_info == null)
+            throw new Exception("Unknown encoding " + src_encoding);
+        if (dst_info == null)
+            throw new Exception("Unknown encoding " + dst_encoding);
+
+        ConcurrentMap<EncodingInfo, AtomicReferenceArray<ConversionPlan>> plans = PLANS.get(src_info);
+        if (plans == null)
+        {
+            plans = new ConcurrentHashMap<EncodingInfo, AtomicReferenceArray<ConversionPlan>>();
+            ConcurrentMap<EncodingInfo, AtomicReferenceArray<ConversionPlan>> previous = PLANS.putIfAbsent(src_info, plans);
+            if (previous != null)
+                plans = previous;
+        }
+        AtomicReferenceArray<ConversionPlan> modes = plans.get(dst_info);
+        if (modes == null)
+        {
+            modes = new AtomicReferenceArray<ConversionPlan>(ConversionOptions.Demosaic.values().length);
+            AtomicReferenceArray<ConversionPlan> previous = plans.putIfAbsent(dst_info, modes);
+            if (previous != null)
+                modes = previous;
+        }
+        ConversionPlan plan = modes.get(demosaic.ordinal());
+        if (plan == null)
+        {
+            modes.compareAndSet(demosaic.ordinal(), null, create(src_info, dst_info, demosaic));
+            plan = modes.get(demosaic.ordinal());
+        }
+        return plan;
+    }
+
+    static protected ConversionPlan create(final EncodingInfo src_info, final EncodingInfo dst_info,
+                                           final ConversionOptions.Demosaic demosaic) throws Exception
+    {
+        int color_code = ImEncoding.SAME_FORMAT;
+        for (int code : ImEncoding.getConversionCode(src_info.name, dst_info.name))
+        {
+            if (code != ImEncoding.SAME_FORMAT)
+                color_code = code;
+        }
+        double alpha = getAlpha(src_info.bitDepth, dst_info.bitDepth);
+        boolean vng = false;
+        if (src_info.family == EncodingInfo.Family.BAYER && color_code != ImEncoding.SAME_FORMAT)
+        {
+            int demosaic_code = ImEncoding.getDemosaicCode(color_code, demosaic);
+            vng = demosaic == ConversionOptions.Demosaic.VNG && demosaic_code != color_code;
+            if (vng && dst_info.cvDepth != opencv_core.CV_8U)
+                throw new Exception("VNG demosaicing only gives 8 bits images, not [" + dst_info.name + "]");
+            color_code = demosaic_code;
+        }
+
+        if (color_code == ImEncoding.SAME_FORMAT)
+            return new ConversionPlan(src_info, dst_info, new int[]{ImEncoding.SAME_FORMAT},
+                    new int[]{opencv_core.CV_MAKETYPE(dst_info.cvDepth, src_info.numChannels)}, alpha);
+        if (src_info.cvDepth == dst_info.cvDepth)
+            return new ConversionPlan(src_info, dst_info, new int[]{color_code}, new int[]{dst_info.cvType}, alpha);
+
+        // Both orders give the same image up to rounding, do the color conversion where fewer bytes are moved.
+        boolean color_first = dst_info.numChannels * src_info.bitDepth < src_info.numChannels * dst_info.bitDepth;
+        // YUV conversions only take 8 bits images, Bayer conversions 8 or 16 bits images, VNG 8 bits images.
+        if (src_info.family == EncodingInfo.Family.YUV)
+            color_first = true;
+        if (dst_info.family == EncodingInfo.Family.YUV || vng)
+            color_first = false;
+        if (src_info.family == EncodingInfo.Family.BAYER && dst_info.cvDepth != opencv_core.CV_8U && dst_info.cvDepth != opencv_core.CV_16U)
+            color_first = true;
+
+        if (color_first)
+            return new ConversionPlan(src_info, dst_info, new int[]{color_code, ImEncoding.SAME_FORMAT},
+                    new int[]{opencv_core.CV_MAKETYPE(src_info.cvDepth, dst_info.numChannels), dst_info.cvType}, alpha);
+        return new ConversionPlan(src_info, dst_info, new int[]{ImEncoding.SAME_FORMAT, color_code},
+                new int[]{opencv_core.CV_MAKETYPE(dst_info.cvDepth, src_info.numChannels), dst_info.cvType}, alpha);
+    }
+
+    // Do scaling between CV_8U [0,255] and CV_16U [0,65535] images.
+    static protected double getAlpha(final int src_depth, final int dst_depth)
+    {
+        if (src_depth == 8 && dst_depth == 16)
+            return 65535. / 255.;
+        if (src_depth == 16 && dst_depth == 8)
+            return 255. / 65535.;
+        return 1.;
+    }
+
+    public int getSteps() { return codes.length; }
+
+    /**
+     * @return a new Mat, taken from pool if there is one, with source converted to the destination encoding.
+     */
+    public Mat apply(final Mat source, final MatPool pool)
+    {
+        // A 4:2:0 image has half as many rows again as the picture it holds.
+        int rows = ImEncoding.getMatRows(dst_info, ImEncoding.getImageHeight(src_info, source.rows()));
+        return apply(source, MatPool.acquire(pool, rows, source.cols(), types[types.length - 1]));
+    }
+
+    /**
+     * Converts source into output, output is reallocated by OpenCV if its size or type do not match.
+     * @return output
+     */
+    public Mat apply(final Mat source, final Mat output)
+    {
+        Mat[] scratch = SCRATCH.get();
+        Mat input = source;
+        for (int i = 0; i < codes.length; ++i)
+        {
+            Mat next = i == codes.length - 1 ? output : scratch[i % 2];
+            if (codes[i] == ImEncoding.SAME_FORMAT)
+                input.convertTo(next, types[i], alpha, 0);
+            else
+                opencv_imgproc.cvtColor(input, next, codes[i]);
+            input = next;
+        }
+        return output;
+    }
+}
@@ -30,20 +30,28 @@
 package cv_bridge;
 
 import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.IntPointer;
 import org.bytedeco.javacpp.opencv_core;
 import org.bytedeco.javacpp.opencv_core.Mat;
+import org.bytedeco.javacpp.opencv_core.Rect;
+import org.bytedeco.javacpp.opencv_core.Size;
 import org.bytedeco.javacpp.opencv_imgcodecs;
 import org.bytedeco.javacpp.opencv_imgproc;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBufferOutputStream;
-import org.ros.internal.message.MessageBuffers;
+import org.jboss.netty.buffer.ChannelBuffers;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
-import java.util.Vector;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import sensor_msgs.CompressedImage;
+import sensor_msgs.EncodingInfo;
 import sensor_msgs.Image;
 import sensor_msgs.ImageEncodings;
 import std_msgs.Header;
@@ -55,9 +63,31 @@ import std_msgs.Header;
 public class CvImage
 {
     static protected final String TAG = "cv_bridge::CvImage";
+    // Per thread scratch Mats of toBitmapMat: the conversion and the rotation.
+    static protected final ThreadLocal<Mat[]> BITMAP_SCRATCH = new ThreadLocal<Mat[]>() {
+        @Override
+        protected Mat[] initialValue() { return new Mat[]{new Mat(), new Mat()}; }
+    };
+    // Per thread scratch Mats of convertAndResize: two for the pyrDown steps, one between resize and conversion.
+    static protected final ThreadLocal<Mat[]> RESIZE_SCRATCH = new ThreadLocal<Mat[]>() {
+        @Override
+        protected Mat[] initialValue() { return new Mat[]{new Mat(), new Mat(), new Mat()}; }
+    };
+    // Per thread row of writeMat, to swap the bytes of buffers it cannot view as a ByteBuffer.
+    static protected final ThreadLocal<byte[][]> SWAP_ROW = new ThreadLocal<byte[][]>() {
+        @Override
+        protected byte[][] initialValue() { return new byte[][]{new byte[0]}; }
+    };
+    // Per thread imencode parameters, reused between calls to toCompressedImageMsg.
+    static protected final ThreadLocal<IntPointer> ENCODE_PARAMS = new ThreadLocal<IntPointer>() {
+        @Override
+        protected IntPointer initialValue() { return new IntPointer(8); }
+    };
     public Header header;
     public Mat image = new Mat();
     public String encoding = "";
+    // Keeps the message alive while image points into its data (see toCvShare).
+    protected Object tracked_object = null;
 
     protected CvImage(){}
 
@@ -79,77 +109,358 @@ public class CvImage
 
     @SuppressWarnings("unused")
     public final Image toImageMsg(final Image ros_image) throws IOException {
+        int length = ImEncoding.safeLongToInt(image.total() * image.elemSize());
+        return toImageMsg(ros_image, ChannelBuffers.buffer(ByteOrder.LITTLE_ENDIAN, length));
+    }
+
+    /**
+     * Same as toImageMsg, but the pixels are written into buffer, which is cleared first.
+     * buffer must be able to hold rows * cols * elemSize bytes.
+     */
+    @SuppressWarnings("unused")
+    public final Image toImageMsg(final Image ros_image, final ChannelBuffer buffer) throws IOException {
         ros_image.setHeader(header);
         ros_image.setEncoding(encoding.toLowerCase());
 
         ros_image.setWidth(image.cols());
-        ros_image.setHeight(image.rows());
-        ros_image.setStep(image.arrayStep());
-        //// TODO: Handle the indian if needed;
-        //// ros_image.setIsBigendian();
+        ros_image.setHeight(ImEncoding.getImageHeight(EncodingInfo.get(encoding), image.rows()));
+        // The message rows are packed, even if image is a region of a bigger Mat.
+        int step = ImEncoding.safeLongToInt(image.cols() * image.elemSize());
+        ros_image.setStep(step);
+        // The pixels are written in the byte order asked by ros_image, little endian by default.
 
-        ChannelBufferOutputStream stream = new ChannelBufferOutputStream(MessageBuffers.dynamicBuffer());
-        byte[] imageInBytes = new byte[image.arraySize()];
-        ((ByteBuffer)image.createBuffer()).get(imageInBytes);
-        stream.write(imageInBytes);
+        buffer.clear();
+        buffer.ensureWritableBytes(step * image.rows());
+        writeMat(image, buffer, getByteOrder(ros_image));
 
-        //noinspection UnusedAssignment
-        imageInBytes = null;
+        ros_image.setData(buffer);
+        return ros_image;
+    }
 
-        ros_image.setData(stream.buffer());
+    /**
+     * Same as toImageMsg, but the message data points into the memory of image instead of a copy.
+     * A non continuous image is cloned first. The Mat is kept alive by the message data,
+     * but it must not be modified until the message has been published.
+     */
+    @SuppressWarnings("unused")
+    public final Image toImageMsgShare(final Image ros_image) {
+        Mat mat = image.isContinuous() ? image : image.clone();
+        ros_image.setHeader(header);
+        ros_image.setEncoding(encoding.toLowerCase());
+
+        ros_image.setWidth(mat.cols());
+        ros_image.setHeight(ImEncoding.getImageHeight(EncodingInfo.get(encoding), mat.rows()));
+        ros_image.setStep(ImEncoding.safeLongToInt(mat.cols() * mat.elemSize()));
+        // The shared memory is in the native byte order.
+        ros_image.setIsBigendian((byte) (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 1 : 0));
+
+        ros_image.setData(new MatChannelBuffer(mat));
         return ros_image;
     }
 
-    //TODO add a compression parameter.
     public final CompressedImage toCompressedImageMsg(final CompressedImage ros_image, Format dst_format) throws Exception {
+        return toCompressedImageMsg(ros_image, dst_format, null);
+    }
+
+    /**
+     * @param options compression parameters, null for the OpenCV defaults.
+     */
+    public final CompressedImage toCompressedImageMsg(final CompressedImage ros_image, final Format dst_format,
+                                                      final EncodeOptions options) throws Exception {
         ros_image.setHeader(header);
-        Mat image;
-        if(!encoding.equals(ImageEncodings.BGR8))
-        {
-            CvImage temp = CvImage.cvtColor(this, ImageEncodings.BGR8);
-            image      = temp.image;
-        }
-        else
+        String compressed_encoding = getCompressedEncoding(dst_format);
+        Mat image = this.image;
+        CvImage temp = null;
+        if(!encoding.equalsIgnoreCase(compressed_encoding))
         {
-            image = this.image;
+            temp  = CvImage.cvtColor(this, compressed_encoding);
+            image = temp.image;
         }
 
         //from https://github.com/bytedeco/javacpp-presets/issues/29#issuecomment-6408082977
+        // imencode copies its std::vector output into new memory for buf, reusing buf would only add a copy in.
         BytePointer buf = new BytePointer();
+        int[] params    = options == null ? new int[0] : options.getParams(dst_format);
+        IntPointer matParams = ENCODE_PARAMS.get();
+        matParams.position(0).limit(params.length);
+        matParams.put(params);
 
         //from http://docs.opencv.org/modules/highgui/doc/reading_and_writing_images_and_video.html#Mat imread(const string& filename, int flags)
 
-        ros_image.setFormat(Format.valueOf(dst_format));
-        opencv_imgcodecs.imencode(Format.getExtension(dst_format), image, buf);
+        ros_image.setFormat(encoding.toLowerCase() + "; " + Format.valueOf(dst_format) + " compressed " + compressed_encoding);
+        try {
+            if (!opencv_imgcodecs.imencode(Format.getExtension(dst_format), image, buf, matParams))
+                throw new Exception("Failed to encode image as [" + Format.valueOf(dst_format) + "]");
+        } finally {
+            if (temp != null)
+                temp.image.release();
+        }
 
+        try {
+            int length = ImEncoding.safeLongToInt(buf.capacity());
+            ChannelBuffer data = ChannelBuffers.buffer(ByteOrder.LITTLE_ENDIAN, length);
+            data.writeBytes(buf.position(0).limit(length).asByteBuffer());
+            ros_image.setData(data);
+        } finally {
+            buf.deallocate();
+        }
+        return ros_image;
+    }
 
-        ChannelBufferOutputStream stream = new ChannelBufferOutputStream(MessageBuffers.dynamicBuffer());
-        //from https://github.com/bytedeco/javacpp-presets/issues/29#issuecomment-6408082977
-        byte[] outputBuffer = new byte[(int)buf.capacity()];
-        buf.get(outputBuffer);
-        stream.write(outputBuffer);
+    /**
+     * The image as rgba8, turned by rotation, without touching the image.
+     * The result is a scratch Mat of the calling thread, valid until its next call. Its createBuffer()
+     * can be given to Bitmap.copyPixelsFromBuffer of an ARGB_8888 Bitmap of the same size, which can be
+     * reused for every frame.
+     */
+    @SuppressWarnings("unused")
+    public final Mat toBitmapMat(final Rotation rotation) throws Exception {
+        EncodingInfo info = EncodingInfo.get(encoding);
+        if (info == null)
+            throw new Exception("Unknown encoding " + encoding);
+        Mat[] scratch = BITMAP_SCRATCH.get();
+        Mat display = image;
+        if (!info.name.equals(ImageEncodings.RGBA8))
+            display = ConversionPlan.get(encoding, ImageEncodings.RGBA8).apply(image, scratch[0]);
+        if (rotation != null && rotation != Rotation.NONE)
+        {
+            opencv_core.rotate(display, scratch[1], rotation.code);
+            display = scratch[1];
+        }
+        // copyPixelsFromBuffer needs packed rows.
+        else if (!display.isContinuous())
+        {
+            display.copyTo(scratch[1]);
+            display = scratch[1];
+        }
+        return display;
+    }
 
-        ros_image.setData(stream.buffer());
-        return ros_image;
+    /**
+     * The encoding imencode can take for dst_format with the least work.
+     * Mono images stay mono, PNG keeps 16 bits, PNG and WebP keep the alpha channel, anything else is bgr8.
+     */
+    protected String getCompressedEncoding(final Format dst_format) {
+        EncodingInfo info = EncodingInfo.get(encoding);
+        if (info == null)
+            return ImageEncodings.BGR8;
+        boolean keep_depth = dst_format == Format.PNG && info.bitDepth == 16;
+        boolean keep_alpha = (dst_format == Format.PNG || dst_format == Format.WEBP) && info.hasAlpha;
+        if (info.family == EncodingInfo.Family.MONO && dst_format != Format.PBM)
+            return keep_depth ? ImageEncodings.MONO16 : ImageEncodings.MONO8;
+        if (keep_alpha)
+            return keep_depth ? ImageEncodings.BGRA16 : ImageEncodings.BGRA8;
+        return keep_depth ? ImageEncodings.BGR16 : ImageEncodings.BGR8;
+    }
+
+    /**
+     * The imdecode flags for dst_encoding:
+     * gray for mono destinations, 16 bits kept for 16 bits destinations and a reduced decode when options asks for it.
+     * benchmark/cv_bridge/DecodeBenchmark compares them with the IMREAD_ANYCOLOR decode and conversion used before.
+     */
+    static protected int getDecodeFlags(final CompressedImage source, final String dst_encoding,
+                                        final DecodeOptions options) {
+        EncodingInfo dst_info = dst_encoding.isEmpty() ? null : EncodingInfo.get(dst_encoding);
+        boolean gray = dst_info != null && dst_info.family == EncodingInfo.Family.MONO;
+        int scale = options == null ? 1 : options.getScale(source.getData());
+        switch (scale)
+        {
+            case 2:
+                return gray ? opencv_imgcodecs.IMREAD_REDUCED_GRAYSCALE_2 : opencv_imgcodecs.IMREAD_REDUCED_COLOR_2;
+            case 4:
+                return gray ? opencv_imgcodecs.IMREAD_REDUCED_GRAYSCALE_4 : opencv_imgcodecs.IMREAD_REDUCED_COLOR_4;
+            case 8:
+                return gray ? opencv_imgcodecs.IMREAD_REDUCED_GRAYSCALE_8 : opencv_imgcodecs.IMREAD_REDUCED_COLOR_8;
+            default:
+                break;
+        }
+        // Reduced decodes are always 8 bits, full size ones can keep the 16 bits of a PNG.
+        int flags = gray ? opencv_imgcodecs.IMREAD_GRAYSCALE : opencv_imgcodecs.IMREAD_ANYCOLOR;
+        if (dst_info != null && dst_info.bitDepth == 16)
+            flags |= opencv_imgcodecs.IMREAD_ANYDEPTH;
+        return flags;
+    }
+
+    // imdecode gives gray, BGR or BGRA images.
+    static protected String getDecodedEncoding(final Mat mat) {
+        boolean wide = mat.depth() == opencv_core.CV_16U;
+        switch (mat.channels())
+        {
+            case 1:
+                return wide ? ImageEncodings.MONO16 : ImageEncodings.MONO8;
+            case 4:
+                return wide ? ImageEncodings.BGRA16 : ImageEncodings.BGRA8;
+            default:
+                return wide ? ImageEncodings.BGR16 : ImageEncodings.BGR8;
+        }
+    }
+
+    /**
+     * An image of width x height in encoding, with a Mat taken from pool, to be filled through getPixelBuffer.
+     * An Android ARGB_8888 Bitmap is copied once, straight into the Mat, with
+     * bitmap.copyPixelsToBuffer(CvImage.allocate(header, ImageEncodings.RGBA8, width, height, pool).getPixelBuffer()).
+     */
+    @SuppressWarnings("unused")
+    static public CvImage allocate(final Header header, final String encoding,
+                                   final int width, final int height, final MatPool pool) throws Exception {
+        EncodingInfo info = EncodingInfo.get(encoding);
+        if (info == null)
+            throw new Exception("Unknown encoding " + encoding);
+        CvImage cvImage = new CvImage();
+        cvImage.header = header;
+        cvImage.encoding = info.name;
+        cvImage.image = MatPool.acquire(pool, height, width, info.cvType);
+        return cvImage;
+    }
+
+    /**
+     * A direct buffer over the pixels of image, which must be continuous. Writes go straight to the Mat.
+     */
+    @SuppressWarnings("unused")
+    public final ByteBuffer getPixelBuffer() throws Exception {
+        if (!image.isContinuous())
+            throw new Exception("The pixels of a region of a bigger Mat are not contiguous");
+        return image.ptr().capacity(image.total() * image.elemSize()).asByteBuffer();
     }
 
     @SuppressWarnings("unused")
     static public CvImage toCvCopy(final Image source) throws Exception {
-        return CvImage.toCvCopyImpl(matFromImage(source), source.getHeader(), source.getEncoding(), "");
+        return CvImage.toCvCopy(source, "");
     }
 
     @SuppressWarnings("unused")
     static public CvImage toCvCopy(final Image source, final String dst_encoding) throws Exception {
-        return CvImage.toCvCopyImpl(matFromImage(source), source.getHeader(), source.getEncoding(), dst_encoding);
+        return CvImage.toCvCopy(source, dst_encoding, null);
+    }
+
+    /**
+     * Same as toCvCopy, but the Mats are taken from pool. Give the image back with pool.release once done.
+     */
+    @SuppressWarnings("unused")
+    static public CvImage toCvCopy(final Image source, final String dst_encoding, final MatPool pool) throws Exception {
+        CvImage cvImage = CvImage.toCvShare(source, dst_encoding, pool);
+        if (cvImage.tracked_object != null)
+        {
+            Mat image = MatPool.acquire(pool, cvImage.image.rows(), cvImage.image.cols(), cvImage.image.type());
+            cvImage.image.copyTo(image);
+            cvImage.image = image;
+            cvImage.tracked_object = null;
+        }
+        return cvImage;
+    }
+
+    /**
+     * Converts and resizes source as set by options, the result is taken from pool when there is one.
+     * A null options only converts.
+     */
+    @SuppressWarnings("unused")
+    static public CvImage toCvCopy(final Image source, final String dst_encoding,
+                                   final ConversionOptions options, final MatPool pool) throws Exception {
+        if (options == null)
+            return CvImage.toCvCopy(source, dst_encoding, pool);
+        Mat mat = matFromImage(source, pool);
+        try {
+            CvImage cvImage = new CvImage();
+            cvImage.header = source.getHeader();
+            cvImage.encoding = dst_encoding.isEmpty() ? source.getEncoding() : dst_encoding;
+            cvImage.image = convertAndResize(mat, source.getEncoding(), cvImage.encoding, options, pool);
+            return cvImage;
+        } finally {
+            if (!isShared(source))
+                MatPool.release(pool, mat);
+        }
+    }
+
+    /**
+     * Copies only the pixels inside roi out of the message, then converts them to dst_encoding.
+     */
+    @SuppressWarnings("unused")
+    static public CvImage toCvCopy(final Image source, final Rect roi, final String dst_encoding) throws Exception {
+        return CvImage.toCvCopy(source, roi, dst_encoding, null);
+    }
+
+    static public CvImage toCvCopy(final Image source, final Rect roi, final String dst_encoding,
+                                   final MatPool pool) throws Exception {
+        Mat mat = matFromImage(source, roi, pool);
+        if (dst_encoding.isEmpty() || dst_encoding.equals(source.getEncoding()))
+        {
+            CvImage cvImage = new CvImage();
+            cvImage.header = source.getHeader();
+            cvImage.encoding = source.getEncoding();
+            cvImage.image = mat;
+            return cvImage;
+        }
+        try {
+            return toCvCopyImpl(mat, source.getHeader(), source.getEncoding(), dst_encoding, pool);
+        } finally {
+            MatPool.release(pool, mat);
+        }
+    }
+
+    /**
+     * Like toCvCopy, but when no conversion is needed the returned image may share its data with
+     * the message, so it must be treated as read only.
+     */
+    @SuppressWarnings("unused")
+    static public CvImage toCvShare(final Image source) throws Exception {
+        return CvImage.toCvShare(source, "");
+    }
+
+    @SuppressWarnings("unused")
+    static public CvImage toCvShare(final Image source, final String dst_encoding) throws Exception {
+        return CvImage.toCvShare(source, dst_encoding, null);
+    }
+
+    @SuppressWarnings("unused")
+    static public CvImage toCvShare(final Image source, final String dst_encoding, final MatPool pool) throws Exception {
+        Mat mat = matFromImage(source, pool);
+        if (dst_encoding.isEmpty() || dst_encoding.equals(source.getEncoding()))
+        {
+            CvImage cvImage = new CvImage();
+            cvImage.header = source.getHeader();
+            cvImage.encoding = source.getEncoding();
+            cvImage.image = mat;
+            if (isShared(source))
+                cvImage.tracked_object = source;
+            return cvImage;
+        }
+        CvImage cvImage = CvImage.toCvCopyImpl(mat, source.getHeader(), source.getEncoding(), dst_encoding, pool);
+        // Only a private copy of the message data may go back to the pool.
+        if (!isShared(source))
+            MatPool.release(pool, mat);
+        return cvImage;
     }
 
     @SuppressWarnings("unused")
     static public CvImage toCvCopy(final CompressedImage source) throws Exception {
-        return CvImage.toCvCopyImpl(matFromImage(source), source.getHeader(), ImageEncodings.BGR8, "");
+        return CvImage.toCvCopy(source, "");
     }
 
     static public CvImage toCvCopy(final CompressedImage source,final String dst_encoding) throws Exception {
-        return CvImage.toCvCopyImpl(matFromImage(source), source.getHeader(), ImageEncodings.BGR8, dst_encoding);
+        return CvImage.toCvCopy(source, dst_encoding, null);
+    }
+
+    /**
+     * @param options decode parameters, null to decode at full size.
+     */
+    static public CvImage toCvCopy(final CompressedImage source, final String dst_encoding,
+                                   final DecodeOptions options) throws Exception {
+        Mat mat = matFromImage(source, getDecodeFlags(source, dst_encoding, options));
+        String decoded_encoding = getDecodedEncoding(mat);
+        // The decoded Mat is already a copy of its own: when it has the requested encoding it is the result.
+        if (dst_encoding.isEmpty() || EncodingInfo.get(dst_encoding) == EncodingInfo.get(decoded_encoding))
+        {
+            CvImage cvImage = new CvImage();
+            cvImage.header = source.getHeader();
+            cvImage.encoding = dst_encoding.isEmpty() ? decoded_encoding : dst_encoding;
+            cvImage.image = mat;
+            return cvImage;
+        }
+        try {
+            return CvImage.toCvCopyImpl(mat, source.getHeader(), decoded_encoding, dst_encoding);
+        } finally {
+            mat.release();
+        }
     }
 
     @SuppressWarnings("unused")
@@ -157,15 +468,227 @@ public class CvImage
         return toCvCopyImpl(source.image, source.header, source.encoding, encoding);
     }
 
+    @SuppressWarnings("unused")
+    static public CvImage cvtColor(final CvImage source, String encoding, final MatPool pool) throws Exception {
+        return toCvCopyImpl(source.image, source.header, source.encoding, encoding, pool);
+    }
+
+    /**
+     * Converts a depth image between 16UC1 and 32FC1 with conversion, or with
+     * DepthConversion.getDefault() (millimetres to metres) if it is null.
+     */
+    @SuppressWarnings("unused")
+    static public CvImage cvtDepth(final CvImage source, final String dst_encoding,
+                                   final DepthConversion conversion, final MatPool pool) throws Exception {
+        DepthConversion depth = conversion == null ? DepthConversion.getDefault() : conversion;
+        CvImage cvImage = new CvImage();
+        cvImage.header = source.header;
+        cvImage.encoding = dst_encoding;
+        if (isDepthToFloat(source.encoding, dst_encoding))
+            cvImage.image = depth.toFloat(source.image, pool);
+        else
+            cvImage.image = depth.toShort(source.image, pool);
+        return cvImage;
+    }
+
+    /**
+     * Same as cvtDepth, reading a 16UC1 source straight from the message without an intermediate copy.
+     */
+    @SuppressWarnings("unused")
+    static public CvImage toCvCopyDepth(final Image source, final String dst_encoding,
+                                        final DepthConversion conversion, final MatPool pool) throws Exception {
+        DepthConversion depth = conversion == null ? DepthConversion.getDefault() : conversion;
+        CvImage cvImage = new CvImage();
+        cvImage.header = source.getHeader();
+        cvImage.encoding = dst_encoding;
+        if (isDepthToFloat(source.getEncoding(), dst_encoding))
+            cvImage.image = depth.toFloat(source, pool);
+        else
+        {
+            Mat mat = matFromImage(source, pool);
+            cvImage.image = depth.toShort(mat, pool);
+            if (!isShared(source))
+                MatPool.release(pool, mat);
+        }
+        return cvImage;
+    }
+
+    /**
+     * @return true for 16UC1 -> 32FC1, false for 32FC1 -> 16UC1, throws for anything else.
+     */
+    static protected boolean isDepthToFloat(final String src_encoding, final String dst_encoding) throws Exception {
+        EncodingInfo src = EncodingInfo.get(src_encoding);
+        EncodingInfo dst = EncodingInfo.get(dst_encoding);
+        if (src != null && dst != null && src.numChannels == 1 && dst.numChannels == 1) {
+            if (src.cvDepth == EncodingInfo.CV_16U && dst.cvDepth == EncodingInfo.CV_32F)
+                return true;
+            if (src.cvDepth == EncodingInfo.CV_32F && dst.cvDepth == EncodingInfo.CV_16U)
+                return false;
+        }
+        throw new Exception("Unsupported depth conversion from [" + src_encoding + "] to [" + dst_encoding + "]");
+    }
+
+    /**
+     * Converts an image to bgr8 for display, as the C++ cvtColorForDisplay.
+     * One channel images are scaled to the range of options and shown in gray or with its colormap,
+     * 32SC1 images and labels are shown with one color per value.
+     */
+    @SuppressWarnings("unused")
+    static public CvImage cvtColorForDisplay(final CvImage source, final DisplayOptions options) throws Exception {
+        return cvtColorForDisplay(source, ImageEncodings.BGR8, options, null);
+    }
+
+    /**
+     * @param dst_encoding the encoding of the result, bgr8 if empty.
+     * @param options null for the defaults.
+     */
+    static public CvImage cvtColorForDisplay(final CvImage source, final String dst_encoding,
+                                             final DisplayOptions options, final MatPool pool) throws Exception {
+        DisplayOptions display = options == null ? new DisplayOptions() : options;
+        String encoding = dst_encoding.isEmpty() ? ImageEncodings.BGR8 : dst_encoding;
+        EncodingInfo info = EncodingInfo.get(source.encoding);
+        if (info == null)
+            throw new Exception("Unknown encoding " + source.encoding);
+
+        // The one channel of a 4:2:0 image is not a plain picture.
+        boolean single_channel = info.numChannels == 1 && info.family != EncodingInfo.Family.YUV;
+        Mat bgr;
+        if (single_channel && (display.isLabels() || ImageEncodings.TYPE_32SC1.equals(info.name)))
+            bgr = DisplayLut.labelsToBgr(source.image, display.getBackgroundLabel(), pool);
+        else if (single_channel)
+        {
+            double[] range = display.isDynamicScaling() ? DisplayLut.findRange(source.image) : display.getRange(info);
+            bgr = DisplayLut.toBgr(source.image, range, display.getColormap(), !display.isDynamicScaling(), pool);
+        }
+        else
+            return toCvCopyImpl(source.image, source.header, source.encoding, encoding, pool);
+
+        CvImage cvImage = new CvImage();
+        cvImage.header = source.header;
+        cvImage.encoding = encoding;
+        if (encoding.equals(ImageEncodings.BGR8))
+            cvImage.image = bgr;
+        else
+        {
+            cvImage.image = ConversionPlan.get(ImageEncodings.BGR8, encoding).apply(bgr, pool);
+            MatPool.release(pool, bgr);
+        }
+        return cvImage;
+    }
+
+    /**
+     * Converts all the sources on executor, or on the calling thread if executor is null.
+     * The results are in the order of sources. Each worker thread reuses its own scratch Mats.
+     */
+    @SuppressWarnings({"unused", "Convert2Diamond"})
+    static public List<CvImage> toCvCopyAll(final List<Image> sources, final String dst_encoding,
+                                            final Executor executor) throws Exception {
+        List<Callable<CvImage>> tasks = new ArrayList<Callable<CvImage>>(sources.size());
+        for (final Image source : sources) {
+            tasks.add(new Callable<CvImage>() {
+                @Override
+                public CvImage call() throws Exception { return toCvCopy(source, dst_encoding); }
+            });
+        }
+        return invokeAll(tasks, executor);
+    }
+
+    /**
+     * Fills ros_images.get(i) from images.get(i) on executor, or on the calling thread if executor is null.
+     */
+    @SuppressWarnings({"unused", "Convert2Diamond"})
+    static public List<Image> toImageMsgAll(final List<CvImage> images, final List<Image> ros_images,
+                                           final Executor executor) throws Exception {
+        if (images.size() != ros_images.size())
+            throw new Exception("Got " + images.size() + " images for " + ros_images.size() + " messages");
+        List<Callable<Image>> tasks = new ArrayList<Callable<Image>>(images.size());
+        for (int i = 0; i < images.size(); ++i) {
+            final CvImage image = images.get(i);
+            final Image ros_image = ros_images.get(i);
+            tasks.add(new Callable<Image>() {
+                @Override
+                public Image call() throws Exception { return image.toImageMsg(ros_image); }
+            });
+        }
+        return invokeAll(tasks, executor);
+    }
+
+    /**
+     * Fills ros_images.get(i) from images.get(i) on executor, or on the calling thread if executor is null.
+     * @param options compression parameters, null for the OpenCV defaults.
+     */
+    @SuppressWarnings({"unused", "Convert2Diamond"})
+    static public List<CompressedImage> toCompressedImageMsgAll(final List<CvImage> images,
+                                                                final List<CompressedImage> ros_images,
+                                                                final Format dst_format,
+                                                                final EncodeOptions options,
+                                                                final Executor executor) throws Exception {
+        if (images.size() != ros_images.size())
+            throw new Exception("Got " + images.size() + " images for " + ros_images.size() + " messages");
+        List<Callable<CompressedImage>> tasks = new ArrayList<Callable<CompressedImage>>(images.size());
+        for (int i = 0; i < images.size(); ++i) {
+            final CvImage image = images.get(i);
+            final CompressedImage ros_image = ros_images.get(i);
+            tasks.add(new Callable<CompressedImage>() {
+                @Override
+                public CompressedImage call() throws Exception {
+                    return image.toCompressedImageMsg(ros_image, dst_format, options);
+                }
+            });
+        }
+        return invokeAll(tasks, executor);
+    }
+
+    // Runs the tasks and waits for all of them, the first failure is thrown once every task is done.
+    // When the calling thread is interrupted, the tasks left are cancelled and the interrupt is thrown right away.
+    @SuppressWarnings("Convert2Diamond")
+    static protected <T> List<T> invokeAll(final List<Callable<T>> tasks, final Executor executor) throws Exception {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (executor == null) {
+            for (Callable<T> task : tasks)
+                results.add(task.call());
+            return results;
+        }
+        List<FutureTask<T>> futures = new ArrayList<FutureTask<T>>(tasks.size());
+        for (Callable<T> task : tasks) {
+            FutureTask<T> future = new FutureTask<T>(task);
+            futures.add(future);
+            executor.execute(future);
+        }
+        Exception failure = null;
+        for (FutureTask<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null)
+                    failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            } catch (InterruptedException e) {
+                for (FutureTask<T> pending : futures)
+                    pending.cancel(true);
+                Thread.currentThread().interrupt();
+                throw e;
+            }
+        }
+        if (failure != null)
+            throw failure;
+        return results;
+    }
+
     static protected CvImage toCvCopyImpl(final Mat source,
                             final Header src_header,
                             final String src_encoding,
                             final String dst_encoding) throws Exception
     {
-        /// @todo Handle endianness - e.g. 16-bit dc1394 camera images are big-endian
-        /// Languages such as Java manage this for you so that Java code can run on any platform and programmers do not have to manage byte ordering.
-        /// from http://www.yolinux.com/TUTORIALS/Endian-Byte-Order.html
-        /// need to check if it true in our case with this cameras.
+        return toCvCopyImpl(source, src_header, src_encoding, dst_encoding, null);
+    }
+
+    static protected CvImage toCvCopyImpl(final Mat source,
+                            final Header src_header,
+                            final String src_encoding,
+                            final String dst_encoding,
+                            final MatPool pool) throws Exception
+    {
+        // source is in the native byte order, matFromImage already swapped big endian messages.
 
         // Copy metadata
         CvImage cvImage = new CvImage();
@@ -175,72 +698,290 @@ public class CvImage
         if (dst_encoding.isEmpty() || dst_encoding.equals(src_encoding))
         {
             cvImage.encoding = src_encoding;
+            cvImage.image = MatPool.acquire(pool, source.rows(), source.cols(), source.type());
             source.copyTo(cvImage.image);
         }
         else
         {
             // Convert the source data to the desired encoding
-            final Vector<Integer> conversion_codes = ImEncoding.getConversionCode(src_encoding, dst_encoding);
-            Mat image1 = source;
-            Mat image2 = new Mat();
+            cvImage.image = ConversionPlan.get(src_encoding, dst_encoding).apply(source, pool);
+            cvImage.encoding = dst_encoding;
+        }
+        return cvImage;
+    }
+
+    /**
+     * The message step, checked against the row length and the size of the data.
+     */
+    static protected int getStep(final Image source, final int row_length) throws Exception {
+        int rows = ImEncoding.getMatRows(EncodingInfo.get(source.getEncoding()), source.getHeight());
+        int step = source.getStep() != 0 ? source.getStep() : row_length;
+        if (step < row_length)
+            throw new Exception("Image step " + step + " is smaller than a row of " + row_length + " bytes");
+        int length = rows == 0 ? 0 : (rows - 1) * step + row_length;
+        if (source.getData().readableBytes() < length)
+            throw new Exception("Image data has " + source.getData().readableBytes() + " bytes, " +
+                    length + " are needed for " + rows + " rows of step " + step);
+        return step;
+    }
+
+    /**
+     * Copies the rows of roi into a new Mat, reading only the bytes inside roi thanks to the message step.
+     */
+    static protected Mat matFromImage(final Image source, final Rect roi, final MatPool pool) throws Exception {
+        checkRoi(source, roi);
+        // checkRoi lets only the whole image of a 4:2:0 encoding through, with its chroma rows.
+        int rows = ImEncoding.getMatRows(EncodingInfo.get(source.getEncoding()), roi.height());
+        ChannelBuffer data = source.getData();
+        int type = ImEncoding.getCvType(source.getEncoding());
+        int elem_size = ImEncoding.elemSize(type);
+        int step = getStep(source, source.getWidth() * elem_size);
+        int row_length = roi.width() * elem_size;
+        int offset = data.readerIndex() + roi.y() * step + roi.x() * elem_size;
+
+        Mat cvImage = MatPool.acquire(pool, rows, roi.width(), type);
+        boolean swap = needsSwap(source);
+        for (int row = 0; row < rows; ++row)
+        {
+            ByteBuffer bytes = cvImage.ptr(row).capacity(row_length).asByteBuffer();
+            if (swap)
+                copyBytes(data.toByteBuffer(offset + row * step, row_length).order(getByteOrder(source)),
+                        bytes.order(ByteOrder.nativeOrder()), ImEncoding.safeLongToInt(cvImage.elemSize1()));
+            else
+                data.getBytes(offset + row * step, bytes);
+        }
+        return cvImage;
+    }
+
+    static protected void checkRoi(final Image source, final Rect roi) throws Exception {
+        String name = "ROI [" + roi.x() + ", " + roi.y() + ", " + roi.width() + "x" + roi.height() + "]";
+        if (roi.x() < 0 || roi.y() < 0 || roi.width() <= 0 || roi.height() <= 0 ||
+                roi.x() + roi.width() > source.getWidth() || roi.y() + roi.height() > source.getHeight())
+            throw new Exception(name + " is outside the " + source.getWidth() + "x" + source.getHeight() + " image");
+        // A crop must not change the Bayer pattern or split a YUV pixel pair.
+        EncodingInfo info = EncodingInfo.get(source.getEncoding());
+        if (info != null && info.family == EncodingInfo.Family.BAYER && (roi.x() % 2 != 0 || roi.y() % 2 != 0))
+            throw new Exception(name + " must start on even coordinates for [" + source.getEncoding() + "]");
+        if (info != null && info.family == EncodingInfo.Family.YUV && (roi.x() % 2 != 0 || roi.width() % 2 != 0))
+            throw new Exception(name + " must have an even x and width for [" + source.getEncoding() + "]");
+        if (ImEncoding.isYuv420(info) && (roi.x() != 0 || roi.y() != 0 || roi.width() != source.getWidth() || roi.height() != source.getHeight()))
+            throw new Exception(name + " must be the whole image for [" + source.getEncoding() + "]");
+    }
+
+    static protected Mat convertAndResize(final Mat source, final String src_encoding, final String dst_encoding,
+                                          final ConversionOptions options, final MatPool pool) throws Exception {
+        EncodingInfo src_info = EncodingInfo.get(src_encoding);
+        EncodingInfo dst_info = EncodingInfo.get(dst_encoding);
+        int height = ImEncoding.getImageHeight(src_info, source.rows());
+        int[] size = options.getSize(source.cols(), height);
+        Mat output = MatPool.acquire(pool, ImEncoding.getMatRows(dst_info, size[1]), size[0], ImEncoding.getCvType(dst_encoding));
+        boolean same_encoding = src_info != null && src_info == dst_info;
+        boolean same_size = size[0] == source.cols() && size[1] == height;
+
+        if (same_size)
+        {
+            if (same_encoding)
+                source.copyTo(output);
+            else
+                ConversionPlan.get(src_encoding, dst_encoding, options.getDemosaic()).apply(source, output);
+            return output;
+        }
+        // The chroma rows of a 4:2:0 image cannot go through resize, so the other side of the conversion is resized.
+        if (ImEncoding.isYuv420(src_info) && ImEncoding.isYuv420(dst_info))
+            throw new Exception("Cannot resize from [" + src_encoding + "] to [" + dst_encoding + "]");
+        if (same_encoding)
+        {
+            resize(source, output, size[0], size[1], options.getInterpolation());
+            return output;
+        }
 
+        // Resize on the smaller side of the conversion. Bayer and YUV images must be converted before they are resized.
+        Mat scratch = RESIZE_SCRATCH.get()[2];
+        boolean mosaic = src_info != null &&
+                (src_info.family == EncodingInfo.Family.BAYER || src_info.family == EncodingInfo.Family.YUV);
+        boolean shrink = (long) size[0] * size[1] < (long) source.cols() * height;
+        if ((shrink && !mosaic) || ImEncoding.isYuv420(dst_info))
+        {
+            resize(source, scratch, size[0], size[1], options.getInterpolation());
+            ConversionPlan.get(src_encoding, dst_encoding, options.getDemosaic()).apply(scratch, output);
+        }
+        else
+        {
+            ConversionPlan.get(src_encoding, dst_encoding, options.getDemosaic()).apply(source, scratch);
+            resize(scratch, output, size[0], size[1], options.getInterpolation());
+        }
+        return output;
+    }
 
-            for(int i=0; i < conversion_codes.size(); ++i)
+    static protected void resize(final Mat source, final Mat output, final int width, final int height,
+                                 final ConversionOptions.Interpolation interpolation) {
+        if (interpolation == ConversionOptions.Interpolation.LINEAR)
+        {
+            opencv_imgproc.resize(source, output, new Size(width, height), 0, 0, opencv_imgproc.INTER_LINEAR);
+            return;
+        }
+        Mat input = source;
+        if (interpolation == ConversionOptions.Interpolation.PYR_DOWN)
+        {
+            Mat[] scratch = RESIZE_SCRATCH.get();
+            for (int i = 0; input.cols() / 2 >= width && input.rows() / 2 >= height; ++i)
             {
-                int conversion_code = conversion_codes.get(i);
-                if (conversion_code == ImEncoding.SAME_FORMAT) {
-                    //convert from Same number of channels, but different bit depth
-
-                    //double alpha = 1.0;
-                    int src_depth = ImageEncodings.bitDepth(src_encoding);
-                    int dst_depth = ImageEncodings.bitDepth(dst_encoding);
-                    // Do scaling between CV_8U [0,255] and CV_16U [0,65535] images.
-                    //from http://www.rubydoc.info/github/ruby-opencv/ruby-opencv/OpenCV/CvMat
-                    //from http://docs.opencv.org/modules/core/doc/basic_structures.html
-                    //TODO: check which value default for beta is ok.
-                    int beta = 0;
-                    int image2_type = opencv_core.CV_MAKETYPE(opencv_core.CV_MAT_DEPTH(ImEncoding.getCvType(dst_encoding)), image1.channels());
-                    if (src_depth == 8 && dst_depth == 16)
-                        image1.convertTo(image2, image2_type, 65535. / 255.,beta);
-                    else if (src_depth == 16 && dst_depth == 8)
-                        image1.convertTo(image2, image2_type, 255. / 65535.,beta);
-                    else
-                        image1.convertTo(image2, image2_type);
-                }
-                else
-                {
-                    // Perform color conversion
-                    opencv_imgproc.cvtColor(image1, image2, conversion_codes.get(0));
-                }
-                image1 = image2;
+                opencv_imgproc.pyrDown(input, scratch[i % 2]);
+                input = scratch[i % 2];
             }
-            cvImage.image = image2;
-            cvImage.encoding = dst_encoding;
         }
-        return cvImage;
+        if (input.cols() == width && input.rows() == height)
+            input.copyTo(output);
+        else
+            opencv_imgproc.resize(input, output, new Size(width, height), 0, 0, opencv_imgproc.INTER_AREA);
+    }
+
+    /**
+     * Appends the pixels of mat to buffer, one packed row after the other, straight from the Mat memory.
+     */
+    static protected void writeMat(final Mat mat, final ChannelBuffer buffer) {
+        writeMat(mat, buffer, ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Same as writeMat, in the given byte order.
+     */
+    static protected void writeMat(final Mat mat, final ChannelBuffer buffer, final ByteOrder order) {
+        int rowLength = ImEncoding.safeLongToInt(mat.cols() * mat.elemSize());
+        int depthSize = ImEncoding.safeLongToInt(mat.elemSize1());
+        int rows = mat.isContinuous() ? 1 : mat.rows();
+        int length = mat.isContinuous() ? rowLength * mat.rows() : rowLength;
+        boolean swap = order != ByteOrder.nativeOrder() && depthSize > 1;
+        for (int row = 0; row < rows; ++row)
+        {
+            ByteBuffer src = mat.ptr(row).capacity(length).asByteBuffer().order(ByteOrder.nativeOrder());
+            if (!swap)
+            {
+                buffer.writeBytes(src);
+                continue;
+            }
+            int index = buffer.writerIndex();
+            buffer.ensureWritableBytes(length);
+            if (buffer.isDirect() || buffer.hasArray())
+            {
+                copyBytes(src, buffer.toByteBuffer(index, length).order(order), depthSize);
+            }
+            else
+            {
+                byte[][] row_bytes = SWAP_ROW.get();
+                if (row_bytes[0].length < length)
+                    row_bytes[0] = new byte[length];
+                copyBytes(src, ByteBuffer.wrap(row_bytes[0], 0, length).order(order), depthSize);
+                buffer.setBytes(index, row_bytes[0], 0, length);
+            }
+            buffer.writerIndex(index + length);
+        }
     }
 
+    /**
+     * Copies src into dst one depthSize element at a time, swapping the bytes when their orders differ.
+     * The typed views do the swap in bulk, without allocating.
+     */
+    static protected void copyBytes(final ByteBuffer src, final ByteBuffer dst, final int depthSize) {
+        if (depthSize == 1 || src.order() == dst.order())
+        {
+            dst.duplicate().put(src.duplicate());
+            return;
+        }
+        switch (depthSize)
+        {
+            case 2:
+                dst.asShortBuffer().put(src.asShortBuffer());
+                break;
+            case 4:
+                dst.asIntBuffer().put(src.asIntBuffer());
+                break;
+            default:
+                dst.asLongBuffer().put(src.asLongBuffer());
+                break;
+        }
+    }
+
+    /**
+     * The byte order of the pixels of a message, as given by is_bigendian.
+     */
+    static protected ByteOrder getByteOrder(final Image image) {
+        return image.getIsBigendian() != 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+    }
+
+    /**
+     * True when the pixels of source have more than one byte per channel and are not in the native byte order.
+     */
+    static protected boolean needsSwap(final Image source) {
+        EncodingInfo info = EncodingInfo.get(source.getEncoding());
+        return info != null && info.bitDepth > 8 && getByteOrder(source) != ByteOrder.nativeOrder();
+    }
+
+    /**
+     * True when matFromImage wraps the message data instead of copying it.
+     */
+    static protected boolean isShared(final Image source) {
+        return source.getData().isDirect() && !needsSwap(source);
+    }
+
+    /**
+     * A direct message buffer is wrapped by the returned Mat without copying, using the message step,
+     * otherwise the pixels are copied once into a new Mat, row by row when the rows are padded.
+     * Only height * step bytes of the message are read.
+     */
     static protected Mat matFromImage(final Image source) throws Exception {
-        byte[] imageInBytes = source.getData().array();
-        imageInBytes = Arrays.copyOfRange(imageInBytes,source.getData().arrayOffset(),imageInBytes.length);
-        String encoding = source.getEncoding().toUpperCase();
-        Mat cvImage = new Mat(source.getHeight(),source.getWidth(), ImEncoding.getCvType(encoding));
+        return matFromImage(source, null);
+    }
 
-        BytePointer bytePointer = new BytePointer(imageInBytes);
-        cvImage = cvImage.data(bytePointer);
+    static protected Mat matFromImage(final Image source, final MatPool pool) throws Exception {
+        ChannelBuffer data = source.getData();
+        int rows = ImEncoding.getMatRows(EncodingInfo.get(source.getEncoding()), source.getHeight());
+        int type = ImEncoding.getCvType(source.getEncoding());
+        int row_length = source.getWidth() * ImEncoding.elemSize(type);
+        int step = getStep(source, row_length);
+        if (isShared(source))
+        {
+            // Only the bytes up to the end of the last row are wrapped, its padding may be missing.
+            int length = rows == 0 ? 0 : (rows - 1) * step + row_length;
+            BytePointer bytePointer = new BytePointer(data.toByteBuffer(data.readerIndex(), length).slice());
+            return new Mat(rows, source.getWidth(), type, bytePointer, step);
+        }
+        if (step != row_length)
+            return matFromImage(source, new Rect(0, 0, source.getWidth(), source.getHeight()), pool);
+
+        Mat cvImage = MatPool.acquire(pool, rows, source.getWidth(), type);
+        int length = ImEncoding.safeLongToInt(cvImage.total() * cvImage.elemSize());
+        ByteBuffer bytes = cvImage.data().capacity(length).asByteBuffer();
+        if (needsSwap(source))
+            copyBytes(data.toByteBuffer(data.readerIndex(), length).order(getByteOrder(source)),
+                    bytes.order(ByteOrder.nativeOrder()), ImEncoding.safeLongToInt(cvImage.elemSize1()));
+        else
+            data.getBytes(data.readerIndex(), bytes);
         return cvImage;
     }
 
     static protected Mat matFromImage(final CompressedImage source) throws Exception
+    {
+        return matFromImage(source, opencv_imgcodecs.IMREAD_ANYCOLOR);
+    }
+
+    static protected Mat matFromImage(final CompressedImage source, final int flags) throws Exception
     {
         ChannelBuffer data = source.getData();
-        byte[] imageInBytes = data.array();
-        imageInBytes = Arrays.copyOfRange(imageInBytes, source.getData().arrayOffset(), imageInBytes.length);
+        int length = data.readableBytes();
+        BytePointer bytePointer;
+        if (data.isDirect())
+        {
+            bytePointer = new BytePointer(data.toByteBuffer(data.readerIndex(), length).slice());
+        }
+        else
+        {
+            bytePointer = new BytePointer(length);
+            data.getBytes(data.readerIndex(), bytePointer.asByteBuffer());
+        }
         //from http://stackoverflow.com/questions/23202130/android-convert-byte-array-from-camera-api-to-color-mat-object-opencv
-        Mat cvImage = new Mat(1, imageInBytes.length, opencv_core.CV_8UC1);
-        BytePointer bytePointer = new BytePointer(imageInBytes);
-        cvImage = cvImage.data(bytePointer);
+        Mat cvImage = new Mat(1, length, opencv_core.CV_8UC1, bytePointer);
 
-        return opencv_imgcodecs.imdecode(cvImage, opencv_imgcodecs.IMREAD_ANYCOLOR);
+        return opencv_imgcodecs.imdecode(cvImage, flags);
     }
 }
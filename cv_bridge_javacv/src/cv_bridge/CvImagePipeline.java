@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2015, Tal Regev
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Android Sensors Driver nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cv_bridge;
+
+import org.ros.message.MessageListener;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs decode, processing and encode/publish of incoming messages on three threads, one per stage,
+ * with a bounded queue in front of each stage. The throughput is the one of the slowest stage
+ * instead of the sum of all of them.
+ * When the decode queue is full, onNewMessage drops the oldest message so the subscriber thread never waits.
+ * The other stages wait for room in the next queue.
+ */
+@SuppressWarnings({"Convert2Diamond", "WeakerAccess", "unused"})
+public class CvImagePipeline<T> implements MessageListener<T>
+{
+    public enum Stage { DECODE, PROCESS, ENCODE }
+
+    public interface Decoder<T>
+    {
+        CvImage decode(T message) throws Exception;
+    }
+
+    public interface Processor
+    {
+        /**
+         * @return the image to encode, or null to drop it. The Mat of a dropped image is released.
+         */
+        CvImage process(CvImage image) throws Exception;
+    }
+
+    public interface Encoder
+    {
+        /**
+         * Encodes and publishes the image.
+         */
+        void encode(CvImage image) throws Exception;
+    }
+
+    protected final Decoder<T> decoder;
+    protected final Processor processor;
+    protected final Encoder encoder;
+    protected final BlockingQueue<T> decodeQueue;
+    protected final BlockingQueue<CvImage> processQueue;
+    protected final BlockingQueue<CvImage> encodeQueue;
+    protected final Thread[] threads = new Thread[Stage.values().length];
+    protected final AtomicLong dropped = new AtomicLong();
+    protected final AtomicLong[] processed = new AtomicLong[Stage.values().length];
+    protected final AtomicLong[] errors = new AtomicLong[Stage.values().length];
+    protected final AtomicInteger[] maxQueueDepth = new AtomicInteger[Stage.values().length];
+
+    /**
+     * @param capacity the size of the queue in front of each stage.
+     */
+    public CvImagePipeline(final int capacity, final Decoder<T> decoder, final Processor processor, final Encoder encoder)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.decoder = decoder;
+        this.processor = processor;
+        this.encoder = encoder;
+        decodeQueue = new ArrayBlockingQueue<T>(capacity);
+        processQueue = new ArrayBlockingQueue<CvImage>(capacity);
+        encodeQueue = new ArrayBlockingQueue<CvImage>(capacity);
+        for (int i = 0; i < threads.length; ++i)
+        {
+            processed[i] = new AtomicLong();
+            errors[i] = new AtomicLong();
+            maxQueueDepth[i] = new AtomicInteger();
+        }
+    }
+
+    public synchronized void start()
+    {
+        for (final Stage stage : Stage.values())
+        {
+            if (threads[stage.ordinal()] != null)
+                continue;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (!Thread.currentThread().isInterrupted())
+                            step(stage);
+                    } catch (InterruptedException e) {
+                        // Stopped.
+                    }
+                }
+            }, "cv_bridge pipeline " + stage.name().toLowerCase());
+            thread.setDaemon(true);
+            threads[stage.ordinal()] = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the threads and waits for them. Queued images are dropped and their Mats released.
+     */
+    public synchronized void shutdown() throws InterruptedException
+    {
+        for (Thread thread : threads)
+        {
+            if (thread != null)
+                thread.interrupt();
+        }
+        for (int i = 0; i < threads.length; ++i)
+        {
+            if (threads[i] != null)
+                threads[i].join();
+            threads[i] = null;
+        }
+        decodeQueue.clear();
+        releaseAll(processQueue);
+        releaseAll(encodeQueue);
+    }
+
+    @Override
+    public void onNewMessage(final T message)
+    {
+        while (!decodeQueue.offer(message))
+        {
+            if (decodeQueue.poll() != null)
+                dropped.incrementAndGet();
+        }
+        updateMaxQueueDepth(Stage.DECODE);
+    }
+
+    protected void step(final Stage stage) throws InterruptedException
+    {
+        // The image held by this stage, released when it is dropped instead of being left to the finalizer.
+        CvImage image = null;
+        try
+        {
+            switch (stage)
+            {
+                case DECODE:
+                {
+                    T message = decodeQueue.take();
+                    image = decoder.decode(message);
+                    forward(stage, processQueue, image);
+                    break;
+                }
+                case PROCESS:
+                {
+                    image = processQueue.take();
+                    CvImage result = processor.process(image);
+                    if (result == null)
+                        release(image);
+                    image = result;
+                    forward(stage, encodeQueue, image);
+                    break;
+                }
+                case ENCODE:
+                {
+                    image = encodeQueue.take();
+                    encoder.encode(image);
+                    processed[stage.ordinal()].incrementAndGet();
+                    break;
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            release(image);
+            throw e;
+        }
+        catch (Exception e)
+        {
+            release(image);
+            errors[stage.ordinal()].incrementAndGet();
+            onError(stage, e);
+        }
+    }
+
+    static protected void release(final CvImage image)
+    {
+        if (image != null)
+            image.image.release();
+    }
+
+    static protected void releaseAll(final BlockingQueue<CvImage> queue)
+    {
+        CvImage image;
+        while ((image = queue.poll()) != null)
+            release(image);
+    }
+
+    protected void forward(final Stage stage, final BlockingQueue<CvImage> next, final CvImage image)
+            throws InterruptedException
+    {
+        processed[stage.ordinal()].incrementAndGet();
+        if (image == null)
+            return;
+        next.put(image);
+        updateMaxQueueDepth(Stage.values()[stage.ordinal() + 1]);
+    }
+
+    /**
+     * Called on the stage thread when a stage throws, the image is dropped and its Mat released. Does nothing by default.
+     */
+    protected void onError(final Stage stage, final Exception e)
+    {
+    }
+
+    protected BlockingQueue<?> getQueue(final Stage stage)
+    {
+        switch (stage)
+        {
+            case DECODE:
+                return decodeQueue;
+            case PROCESS:
+                return processQueue;
+            default:
+                return encodeQueue;
+        }
+    }
+
+    protected void updateMaxQueueDepth(final Stage stage)
+    {
+        int depth = getQueue(stage).size();
+        AtomicInteger max = maxQueueDepth[stage.ordinal()];
+        int current = max.get();
+        while (depth > current && !max.compareAndSet(current, depth))
+            current = max.get();
+    }
+
+    /**
+     * @return the number of images waiting in front of stage.
+     */
+    public int getQueueDepth(final Stage stage) { return getQueue(stage).size(); }
+
+    /**
+     * @return the highest number of images seen waiting in front of stage.
+     */
+    public int getMaxQueueDepth(final Stage stage) { return maxQueueDepth[stage.ordinal()].get(); }
+
+    /**
+     * @return the number of images that went through stage without an error.
+     */
+    public long getProcessed(final Stage stage) { return processed[stage.ordinal()].get(); }
+
+    public long getErrors(final Stage stage) { return errors[stage.ordinal()].get(); }
+
+    /**
+     * @return the number of messages dropped because the decode queue was full.
+     */
+    public long getDropped() { return dropped.get(); }
+
+    public void resetCounters()
+    {
+        dropped.set(0);
+        for (int i = 0; i < threads.length; ++i)
+        {
+            processed[i].set(0);
+            errors[i].set(0);
+            maxQueueDepth[i].set(0);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015, Tal Regev
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Android Sensors Driver nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cv_bridge;
+
+import org.bytedeco.javacpp.opencv_imgcodecs;
+
+import java.util.Arrays;
+
+/**
+ * Compression parameters for CvImage.toCompressedImageMsg.
+ * Parameters left at DEFAULT are not passed to imencode, so OpenCV uses its own defaults.
+ * Only the parameters of the target format are used.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class EncodeOptions
+{
+    public static final int DEFAULT = -1;
+
+    protected int jpegQuality = DEFAULT;
+    protected boolean jpegProgressive = false;
+    protected boolean jpegOptimize = false;
+    protected int pngCompression = DEFAULT;
+    protected int webpQuality = DEFAULT;
+
+    /**
+     * @param quality from 0 to 100, higher is better. OpenCV default is 95.
+     */
+    public EncodeOptions setJpegQuality(final int quality)
+    {
+        jpegQuality = checkRange("JPEG quality", quality, 0, 100);
+        return this;
+    }
+
+    public EncodeOptions setJpegProgressive(final boolean progressive)
+    {
+        jpegProgressive = progressive;
+        return this;
+    }
+
+    public EncodeOptions setJpegOptimize(final boolean optimize)
+    {
+        jpegOptimize = optimize;
+        return this;
+    }
+
+    /**
+     * @param level from 0 to 9, higher is smaller and slower. OpenCV default is 1.
+     */
+    public EncodeOptions setPngCompression(final int level)
+    {
+        pngCompression = checkRange("PNG compression", level, 0, 9);
+        return this;
+    }
+
+    /**
+     * @param quality from 1 to 100, 100 is lossless. OpenCV default is 100.
+     */
+    public EncodeOptions setWebpQuality(final int quality)
+    {
+        webpQuality = checkRange("WebP quality", quality, 1, 100);
+        return this;
+    }
+
+    public int getJpegQuality() { return jpegQuality; }
+
+    public boolean isJpegProgressive() { return jpegProgressive; }
+
+    public boolean isJpegOptimize() { return jpegOptimize; }
+
+    public int getPngCompression() { return pngCompression; }
+
+    public int getWebpQuality() { return webpQuality; }
+
+    /**
+     * @return the imencode (flag, value) pairs for format, empty if there is nothing to set.
+     */
+    public int[] getParams(final Format format)
+    {
+        int[] params = new int[6];
+        int size = 0;
+        switch (format)
+        {
+            case JPG:
+            case JPEG:
+            case JPE:
+                if (jpegQuality != DEFAULT) {
+                    params[size++] = opencv_imgcodecs.IMWRITE_JPEG_QUALITY;
+                    params[size++] = jpegQuality;
+                }
+                if (jpegProgressive) {
+                    params[size++] = opencv_imgcodecs.IMWRITE_JPEG_PROGRESSIVE;
+                    params[size++] = 1;
+                }
+                if (jpegOptimize) {
+                    params[size++] = opencv_imgcodecs.IMWRITE_JPEG_OPTIMIZE;
+                    params[size++] = 1;
+                }
+                break;
+            case PNG:
+                if (pngCompression != DEFAULT) {
+                    params[size++] = opencv_imgcodecs.IMWRITE_PNG_COMPRESSION;
+                    params[size++] = pngCompression;
+                }
+                break;
+            case WEBP:
+                if (webpQuality != DEFAULT) {
+                    params[size++] = opencv_imgcodecs.IMWRITE_WEBP_QUALITY;
+                    params[size++] = webpQuality;
+                }
+                break;
+            default:
+                break;
+        }
+        return Arrays.copyOf(params, size);
+    }
+
+    static protected int checkRange(final String name, final int value, final int min, final int max)
+    {
+        if (value < min || value > max)
+            throw new IllegalArgumentException(name + " must be between " + min + " and " + max + ": " + value);
+        return value;
+    }
+}
@@ -38,7 +38,7 @@ import java.util.Map;
 //from http://stackoverflow.com/questions/11047756/getting-enum-associated-with-int-value
 //from http://docs.opencv.org/modules/highgui/doc/reading_and_writing_images_and_video.html#Mat imread(const string& filename, int flags)
 @SuppressWarnings("Convert2Diamond")
-public enum Format { JPG("jpg"), JPEG("jpeg"), JPE("jpe"), PNG("png"), BMP("bmp"), DIB("dib"), PPM("ppm"), PGM("pgm"), PBM("pbm");
+public enum Format { JPG("jpg"), JPEG("jpeg"), JPE("jpe"), PNG("png"), BMP("bmp"), DIB("dib"), PPM("ppm"), PGM("pgm"), PBM("pbm"), WEBP("webp");
     protected String strFormat;
 
     static private Map<Format, String> map = new HashMap<Format, String>();
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2015, Tal Regev
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Android Sensors Driver nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cv_bridge;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+import org.jboss.netty.buffer.ByteBufferBackedChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A read only view of the memory of a continuous Mat.
+ * The Mat is referenced by the buffer, and by its duplicates and slices, so its memory stays valid
+ * as long as one of them is reachable.
+ */
+@SuppressWarnings("WeakerAccess")
+public class MatChannelBuffer extends ByteBufferBackedChannelBuffer
+{
+    protected final Mat mat;
+
+    public MatChannelBuffer(final Mat mat)
+    {
+        this(mat, mat.data().capacity(ImEncoding.safeLongToInt(mat.total() * mat.elemSize()))
+                .asByteBuffer().asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    protected MatChannelBuffer(final Mat mat, final ByteBuffer buffer)
+    {
+        super(buffer);
+        this.mat = mat;
+    }
+
+    @Override
+    public ChannelBuffer duplicate()
+    {
+        ChannelBuffer duplicate = new MatChannelBuffer(mat, toByteBuffer(0, capacity()));
+        duplicate.setIndex(readerIndex(), writerIndex());
+        return duplicate;
+    }
+
+    @Override
+    public ChannelBuffer slice(final int index, final int length)
+    {
+        return new MatChannelBuffer(mat, toByteBuffer(index, length));
+    }
+
+    public Mat getMat()
+    {
+        return mat;
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2015, Tal Regev
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Android Sensors Driver nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package sensor_msgs;
+
+import static sensor_msgs.ImageEncodings.*;
+
+/**
+ * Compares the cost of the encoding queries one conversion makes per frame, through the EncodingInfo
+ * registry against the equals chains ImageEncodings used before, kept below as they were.
+ * Run with: ./gradlew :image:encodingBenchmark
+ */
+@SuppressWarnings("WeakerAccess")
+public class EncodingInfoBenchmark
+{
+    // The encoding pairs of a few common conversions, spelled as messages and callers spell them.
+    static final String[][] PAIRS = {
+            {RGB8, BGR8},
+            {BGR8, MONO8},
+            {"BGRA8", RGB8},
+            {BAYER_RGGB8, BGR8},
+            {MONO16, TYPE_32FC1},
+    };
+    static final int ITERATIONS = 2000000;
+    static final int RUNS = 5;
+
+    public interface Queries
+    {
+        long run(String encoding) throws Exception;
+    }
+
+    // What toCvCopy asks about each encoding: its family, alpha, channels and depth.
+    static final Queries REGISTRY = new Queries() {
+        @Override
+        public long run(final String encoding) throws Exception {
+            long sink = ImageEncodings.isColor(encoding) ? 1 : 0;
+            sink += ImageEncodings.isMono(encoding) ? 2 : 0;
+            sink += ImageEncodings.isBayer(encoding) ? 4 : 0;
+            sink += ImageEncodings.hasAlpha(encoding) ? 8 : 0;
+            return sink + ImageEncodings.numChannels(encoding) + ImageEncodings.bitDepth(encoding);
+        }
+    };
+
+    static final Queries EQUALS_CHAINS = new Queries() {
+        @Override
+        public long run(final String encoding) throws Exception {
+            long sink = EqualsChains.isColor(encoding) ? 1 : 0;
+            sink += EqualsChains.isMono(encoding) ? 2 : 0;
+            sink += EqualsChains.isBayer(encoding) ? 4 : 0;
+            sink += EqualsChains.hasAlpha(encoding) ? 8 : 0;
+            return sink + EqualsChains.numChannels(encoding) + EqualsChains.bitDepth(encoding);
+        }
+    };
+
+    // The same answers read from one EncodingInfo, as the bridge now does.
+    static final Queries SINGLE_LOOKUP = new Queries() {
+        @Override
+        public long run(final String encoding) throws Exception {
+            EncodingInfo info = EncodingInfo.get(encoding);
+            long sink = info.family == EncodingInfo.Family.COLOR ? 1 : 0;
+            sink += info.family == EncodingInfo.Family.MONO ? 2 : 0;
+            sink += info.family == EncodingInfo.Family.BAYER ? 4 : 0;
+            sink += info.hasAlpha ? 8 : 0;
+            return sink + info.numChannels + info.bitDepth;
+        }
+    };
+
+    // Nanoseconds per frame, a frame being the queries on both encodings of every pair.
+    static double measure(final Queries queries, final long[] sink) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            for (String[] pair : PAIRS) {
+                sink[0] += queries.run(pair[0]);
+                sink[0] += queries.run(pair[1]);
+            }
+        }
+        return (System.nanoTime() - start) / (double) ITERATIONS;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] names = {"equals chains", "ImageEncodings", "EncodingInfo.get"};
+        Queries[] queries = {EQUALS_CHAINS, REGISTRY, SINGLE_LOOKUP};
+        long[] sink = new long[1];
+        // The first run warms up the JIT and is not printed.
+        for (int run = 0; run <= RUNS; ++run) {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < queries.length; ++i)
+                line.append(String.format("%s: %.1f ns/frame  ", names[i], measure(queries[i], sink)));
+            if (run > 0)
+                System.out.println(line.toString().trim());
+        }
+        // Printed so the JIT cannot drop the queries.
+        System.out.println("checksum " + sink[0]);
+    }
+
+    /**
+     * The equals chains of ImageEncodings before the EncodingInfo registry.
+     */
+    static class EqualsChains
+    {
+        static boolean isColor(final String encoding)
+        {
+            String lEncoding = encoding.toLowerCase();
+            return lEncoding.equals(RGB8)  || lEncoding.equals(BGR8) ||
+                    lEncoding.equals(RGBA8) || lEncoding.equals(BGRA8) ||
+                    lEncoding.equals(RGB16) || lEncoding.equals(BGR16) ||
+                    lEncoding.equals(RGBA16) || lEncoding.equals(BGRA16);
+        }
+
+        static boolean isMono(final String encoding)
+        {
+            String lEncoding = encoding.toLowerCase();
+            return lEncoding.equals(MONO8) || lEncoding.equals(MONO16);
+        }
+        static boolean isBayer(final String encoding )
+        {
+            String lEncoding = encoding.toLowerCase();
+            return lEncoding.equals(BAYER_RGGB8) || lEncoding.equals(BAYER_BGGR8) ||
+                    lEncoding.equals(BAYER_GBRG8) || lEncoding.equals(BAYER_GRBG8) ||
+                    lEncoding.equals(BAYER_RGGB16) || lEncoding.equals(BAYER_BGGR16) ||
+                    lEncoding.equals(BAYER_GBRG16) || lEncoding.equals(BAYER_GRBG16);
+        }
+
+        static boolean hasAlpha(final String encoding )
+        {
+            String lEncoding = encoding.toLowerCase();
+            return lEncoding.equals(RGBA8) || lEncoding.equals(BGRA8) ||
+                    lEncoding.equals(RGBA16) || lEncoding.equals(BGRA16);
+        }
+
+        static int numChannels(final String enc ) throws Exception {
+
+            String encoding = enc.toLowerCase();
+            // First do the common-case encodings
+            if (encoding.equals(MONO8) ||
+                    encoding.equals(MONO16))
+                return 1;
+            if (encoding.equals(BGR8) ||
+                    encoding.equals(RGB8) ||
+                    encoding.equals(BGR16) ||
+                    encoding.equals(RGB16))
+                return 3;
+            if (encoding.equals(BGRA8) ||
+                    encoding.equals(RGBA8) ||
+                    encoding.equals(BGRA16) ||
+                    encoding.equals(RGBA16))
+                return 4;
+            if (encoding.equals(BAYER_RGGB8) ||
+                    encoding.equals(BAYER_BGGR8) ||
+                    encoding.equals(BAYER_GBRG8) ||
+                    encoding.equals(BAYER_GRBG8) ||
+                    encoding.equals(BAYER_RGGB16) ||
+                    encoding.equals(BAYER_BGGR16) ||
+                    encoding.equals(BAYER_GBRG16) ||
+                    encoding.equals(BAYER_GRBG16))
+                return 1;
+
+            if (encoding.equals(YUV422))
+                return 2;
+
+            encoding = encoding.toUpperCase();
+
+            if (encoding.equals(TYPE_8UC1) ||
+                    encoding.equals(TYPE_8SC1) ||
+                    encoding.equals(TYPE_16UC1) ||
+                    encoding.equals(TYPE_16SC1) ||
+                    encoding.equals(TYPE_32SC1) ||
+                    encoding.equals(TYPE_32FC1) ||
+                    encoding.equals(TYPE_64FC1))
+                return 1;
+
+            if (encoding.equals(TYPE_8UC2) ||
+                    encoding.equals(TYPE_8SC2) ||
+                    encoding.equals(TYPE_16UC2) ||
+                    encoding.equals(TYPE_16SC2) ||
+                    encoding.equals(TYPE_32SC2) ||
+                    encoding.equals(TYPE_32FC2) ||
+                    encoding.equals(TYPE_64FC2))
+                return 2;
+
+            if (encoding.equals(TYPE_8UC3) ||
+                    encoding.equals(TYPE_8SC3) ||
+                    encoding.equals(TYPE_16UC3) ||
+                    encoding.equals(TYPE_16SC3) ||
+                    encoding.equals(TYPE_32SC3) ||
+                    encoding.equals(TYPE_32FC3) ||
+                    encoding.equals(TYPE_64FC3))
+                return 3;
+
+            if (encoding.equals(TYPE_8UC4) ||
+                    encoding.equals(TYPE_8SC4) ||
+                    encoding.equals(TYPE_16UC4) ||
+                    encoding.equals(TYPE_16SC4) ||
+                    encoding.equals(TYPE_32SC4) ||
+                    encoding.equals(TYPE_32FC4) ||
+                    encoding.equals(TYPE_64FC4))
+                return 4;
+
+            throw new Exception("Unknown encoding " + encoding);
+        }
+
+        static int bitDepth(final String enc ) throws Exception {
+
+            String encoding = enc.toLowerCase();
+            if (encoding.equals(MONO16))
+                return 16;
+            if (encoding.equals(MONO8) ||
+                    encoding.equals(BGR8) ||
+                    encoding.equals(RGB8) ||
+                    encoding.equals(BGRA8) ||
+                    encoding.equals(RGBA8) ||
+                    encoding.equals(BAYER_RGGB8) ||
+                    encoding.equals(BAYER_BGGR8) ||
+                    encoding.equals(BAYER_GBRG8) ||
+                    encoding.equals(BAYER_GRBG8))
+                return 8;
+
+            if (encoding.equals(MONO16) ||
+                    encoding.equals(BGR16) ||
+                    encoding.equals(RGB16) ||
+                    encoding.equals(BGRA16) ||
+                    encoding.equals(RGBA16) ||
+                    encoding.equals(BAYER_RGGB16) ||
+                    encoding.equals(BAYER_BGGR16) ||
+                    encoding.equals(BAYER_GBRG16) ||
+                    encoding.equals(BAYER_GRBG16))
+                return 16;
+
+            if (encoding.equals(YUV422))
+                return 8;
+
+            encoding = encoding.toUpperCase();
+
+            if (encoding.equals(TYPE_8UC1) ||
+                    encoding.equals(TYPE_8UC2) ||
+                    encoding.equals(TYPE_8UC3) ||
+                    encoding.equals(TYPE_8UC4))
+                return 8;
+
+            if (encoding.equals(TYPE_8SC1) ||
+                    encoding.equals(TYPE_8SC2) ||
+                    encoding.equals(TYPE_8SC3) ||
+                    encoding.equals(TYPE_8SC4))
+                return 8;
+
+            if (encoding.equals(TYPE_16UC1) ||
+                    encoding.equals(TYPE_16UC2) ||
+                    encoding.equals(TYPE_16UC3) ||
+                    encoding.equals(TYPE_16UC4))
+                return 16;
+
+            if (encoding.equals(TYPE_16SC1) ||
+                    encoding.equals(TYPE_16SC2) ||
+                    encoding.equals(TYPE_16SC3) ||
+                    encoding.equals(TYPE_16SC4))
+                return 16;
+
+            if (encoding.equals(TYPE_32SC1) ||
+                    encoding.equals(TYPE_32SC2) ||
+                    encoding.equals(TYPE_32SC3) ||
+                    encoding.equals(TYPE_32SC4))
+                return 32;
+
+            if (encoding.equals(TYPE_32FC1) ||
+                    encoding.equals(TYPE_32FC2) ||
+                    encoding.equals(TYPE_32FC3) ||
+                    encoding.equals(TYPE_32FC4))
+                return 32;
+
+            if (encoding.equals(TYPE_64FC1) ||
+                    encoding.equals(TYPE_64FC2) ||
+                    encoding.equals(TYPE_64FC3) ||
+                    encoding.equals(TYPE_64FC4))
+                return 64;
+
+            throw new Exception("Unknown encoding " + encoding);
+        }
+    }
+}
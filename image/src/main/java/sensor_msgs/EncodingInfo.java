@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2015, Tal Regev
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Android Sensors Driver nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package sensor_msgs;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable description of an image encoding. Every encoding string is resolved once into an
+ * EncodingInfo, so per frame queries cost a single hash lookup instead of a chain of equals.
+ */
+@SuppressWarnings({"Convert2Diamond", "WeakerAccess"})
+public final class EncodingInfo {
+    public enum Family { COLOR, MONO, BAYER, YUV, GENERIC }
+    public enum BayerPattern { NONE, RGGB, BGGR, GBRG, GRBG }
+
+    // OpenCV depth codes, the cvType of an encoding is built like CV_MAKETYPE.
+    public static final int CV_8U  = 0;
+    public static final int CV_8S  = 1;
+    public static final int CV_16U = 2;
+    public static final int CV_16S = 3;
+    public static final int CV_32S = 4;
+    public static final int CV_32F = 5;
+    public static final int CV_64F = 6;
+
+    public final String name;
+    public final Family family;
+    public final int numChannels;
+    public final int bitDepth;
+    public final int cvDepth;
+    public final int cvType;
+    public final boolean hasAlpha;
+    public final BayerPattern bayerPattern;
+
+    private static final Map<String, EncodingInfo> registry = new HashMap<String, EncodingInfo>();
+
+    static {
+        register(ImageEncodings.RGB8,   Family.COLOR, 3, CV_8U,  false, BayerPattern.NONE);
+        register(ImageEncodings.RGBA8,  Family.COLOR, 4, CV_8U,  true,  BayerPattern.NONE);
+        register(ImageEncodings.RGB16,  Family.COLOR, 3, CV_16U, false, BayerPattern.NONE);
+        register(ImageEncodings.RGBA16, Family.COLOR, 4, CV_16U, true,  BayerPattern.NONE);
+        register(ImageEncodings.BGR8,   Family.COLOR, 3, CV_8U,  false, BayerPattern.NONE);
+        register(ImageEncodings.BGRA8,  Family.COLOR, 4, CV_8U,  true,  BayerPattern.NONE);
+        register(ImageEncodings.BGR16,  Family.COLOR, 3, CV_16U, false, BayerPattern.NONE);
+        register(ImageEncodings.BGRA16, Family.COLOR, 4, CV_16U, true,  BayerPattern.NONE);
+        register(ImageEncodings.MONO8,  Family.MONO,  1, CV_8U,  false, BayerPattern.NONE);
+        register(ImageEncodings.MONO16, Family.MONO,  1, CV_16U, false, BayerPattern.NONE);
+
+        // OpenCV CvMat types
+        final String[] depthNames = {"8U", "8S", "16U", "16S", "32S", "32F", "64F"};
+        for (int depth = CV_8U; depth <= CV_64F; ++depth) {
+            for (int channels = 1; channels <= 4; ++channels) {
+                register(depthNames[depth] + "C" + channels, Family.GENERIC, channels, depth, false, BayerPattern.NONE);
+            }
+        }
+
+        // Bayer encodings
+        register(ImageEncodings.BAYER_RGGB8,  Family.BAYER, 1, CV_8U,  false, BayerPattern.RGGB);
+        register(ImageEncodings.BAYER_BGGR8,  Family.BAYER, 1, CV_8U,  false, BayerPattern.BGGR);
+        register(ImageEncodings.BAYER_GBRG8,  Family.BAYER, 1, CV_8U,  false, BayerPattern.GBRG);
+        register(ImageEncodings.BAYER_GRBG8,  Family.BAYER, 1, CV_8U,  false, BayerPattern.GRBG);
+        register(ImageEncodings.BAYER_RGGB16, Family.BAYER, 1, CV_16U, false, BayerPattern.RGGB);
+        register(ImageEncodings.BAYER_BGGR16, Family.BAYER, 1, CV_16U, false, BayerPattern.BGGR);
+        register(ImageEncodings.BAYER_GBRG16, Family.BAYER, 1, CV_16U, false, BayerPattern.GBRG);
+        register(ImageEncodings.BAYER_GRBG16, Family.BAYER, 1, CV_16U, false, BayerPattern.GRBG);
+
+        // Miscellaneous
+        register(ImageEncodings.YUV422, Family.YUV, 2, CV_8U, false, BayerPattern.NONE);
+        register(ImageEncodings.YUV422_YUY2, Family.YUV, 2, CV_8U, false, BayerPattern.NONE);
+        // One channel, the Mat of a 4:2:0 image has height * 3 / 2 rows.
+        register(ImageEncodings.NV21,   Family.YUV, 1, CV_8U, false, BayerPattern.NONE);
+        register(ImageEncodings.NV12,   Family.YUV, 1, CV_8U, false, BayerPattern.NONE);
+        register(ImageEncodings.YUV420, Family.YUV, 1, CV_8U, false, BayerPattern.NONE);
+    }
+
+    private EncodingInfo(final String name, final Family family, final int numChannels, final int cvDepth,
+                         final boolean hasAlpha, final BayerPattern bayerPattern)
+    {
+        this.name = name;
+        this.family = family;
+        this.numChannels = numChannels;
+        this.cvDepth = cvDepth;
+        this.bitDepth = depthToBits(cvDepth);
+        this.cvType = cvDepth + ((numChannels - 1) << 3);
+        this.hasAlpha = hasAlpha;
+        this.bayerPattern = bayerPattern;
+    }
+
+    // The registry is only written here, while the class is initialized.
+    private static void register(final String name, final Family family, final int numChannels, final int cvDepth,
+                                 final boolean hasAlpha, final BayerPattern bayerPattern)
+    {
+        EncodingInfo info = new EncodingInfo(name, family, numChannels, cvDepth, hasAlpha, bayerPattern);
+        // Encodings are matched case insensitively, register the common spellings up front.
+        registry.put(name, info);
+        registry.put(name.toLowerCase(Locale.US), info);
+        registry.put(name.toUpperCase(Locale.US), info);
+    }
+
+    private static int depthToBits(final int cvDepth)
+    {
+        switch (cvDepth) {
+            case CV_8U:
+            case CV_8S:
+                return 8;
+            case CV_16U:
+            case CV_16S:
+                return 16;
+            case CV_32S:
+            case CV_32F:
+                return 32;
+            default:
+                return 64;
+        }
+    }
+
+    /**
+     * @return the description of the encoding, or null if the encoding is unknown.
+     */
+    public static EncodingInfo get(final String encoding)
+    {
+        EncodingInfo info = registry.get(encoding);
+        if (info == null) {
+            info = registry.get(encoding.toLowerCase(Locale.US));
+        }
+        return info;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
@@ -90,182 +90,53 @@ public class ImageEncodings {
     // This is the UYVY version of YUV422 codec http://www.fourcc.org/yuv.php#UYVY
     // with an 8-bit depth
     public static final String YUV422 = "yuv422";
+    // This is the YUYV version of YUV422 codec http://www.fourcc.org/yuv.php#YUYV
+    // with an 8-bit depth, as USB cameras give it
+    public static final String YUV422_YUY2 = "yuv422_yuy2";
+    // YUV 4:2:0 with 8-bit depth, a full Y plane followed by the chroma at half resolution.
+    // height and width are those of the picture, step is the Y row length, and data is height * 3 / 2 rows.
+    // NV21 has interleaved V and U, as android.hardware.Camera previews.
+    public static final String NV21 = "nv21";
+    // NV12 has interleaved U and V.
+    public static final String NV12 = "nv12";
+    // I420 has a U plane followed by a V plane.
+    public static final String YUV420 = "yuv420";
 
     public static boolean isColor(final String encoding)
     {
-        String lEncoding = encoding.toLowerCase();
-        return lEncoding.equals(RGB8)  || lEncoding.equals(BGR8) ||
-                lEncoding.equals(RGBA8) || lEncoding.equals(BGRA8) ||
-                lEncoding.equals(RGB16) || lEncoding.equals(BGR16) ||
-                lEncoding.equals(RGBA16) || lEncoding.equals(BGRA16);
+        EncodingInfo info = EncodingInfo.get(encoding);
+        return info != null && info.family == EncodingInfo.Family.COLOR;
     }
 
     public static boolean isMono(final String encoding)
     {
-        String lEncoding = encoding.toLowerCase();
-        return lEncoding.equals(MONO8) || lEncoding.equals(MONO16);
+        EncodingInfo info = EncodingInfo.get(encoding);
+        return info != null && info.family == EncodingInfo.Family.MONO;
     }
     public static boolean isBayer(final String encoding )
     {
-        String lEncoding = encoding.toLowerCase();
-        return lEncoding.equals(BAYER_RGGB8) || lEncoding.equals(BAYER_BGGR8) ||
-                lEncoding.equals(BAYER_GBRG8) || lEncoding.equals(BAYER_GRBG8) ||
-                lEncoding.equals(BAYER_RGGB16) || lEncoding.equals(BAYER_BGGR16) ||
-                lEncoding.equals(BAYER_GBRG16) || lEncoding.equals(BAYER_GRBG16);
+        EncodingInfo info = EncodingInfo.get(encoding);
+        return info != null && info.family == EncodingInfo.Family.BAYER;
     }
 
     public static boolean hasAlpha(final String encoding )
     {
-        String lEncoding = encoding.toLowerCase();
-        return lEncoding.equals(RGBA8) || lEncoding.equals(BGRA8) ||
-                lEncoding.equals(RGBA16) || lEncoding.equals(BGRA16);
+        EncodingInfo info = EncodingInfo.get(encoding);
+        return info != null && info.hasAlpha;
     }
 
     public static int numChannels(final String enc ) throws Exception {
-
-        String encoding = enc.toLowerCase();
-        // First do the common-case encodings
-        if (encoding.equals(MONO8) ||
-                encoding.equals(MONO16))
-			return 1;
-        if (encoding.equals(BGR8) ||
-                encoding.equals(RGB8) ||
-                encoding.equals(BGR16) ||
-                encoding.equals(RGB16))
-			return 3;
-        if (encoding.equals(BGRA8) ||
-                encoding.equals(RGBA8) ||
-                encoding.equals(BGRA16) ||
-                encoding.equals(RGBA16))
-			return 4;
-        if (encoding.equals(BAYER_RGGB8) ||
-                encoding.equals(BAYER_BGGR8) ||
-                encoding.equals(BAYER_GBRG8) ||
-                encoding.equals(BAYER_GRBG8) ||
-                encoding.equals(BAYER_RGGB16) ||
-                encoding.equals(BAYER_BGGR16) ||
-                encoding.equals(BAYER_GBRG16) ||
-                encoding.equals(BAYER_GRBG16))
-			return 1;
-
-        if (encoding.equals(YUV422))
-            return 2;
-
-        encoding = encoding.toUpperCase();
-
-        if (encoding.equals(TYPE_8UC1) ||
-                encoding.equals(TYPE_8SC1) ||
-                encoding.equals(TYPE_16UC1) ||
-                encoding.equals(TYPE_16SC1) ||
-                encoding.equals(TYPE_32SC1) ||
-                encoding.equals(TYPE_32FC1) ||
-                encoding.equals(TYPE_64FC1))
-			return 1;
-
-        if (encoding.equals(TYPE_8UC2) ||
-                encoding.equals(TYPE_8SC2) ||
-                encoding.equals(TYPE_16UC2) ||
-                encoding.equals(TYPE_16SC2) ||
-                encoding.equals(TYPE_32SC2) ||
-                encoding.equals(TYPE_32FC2) ||
-                encoding.equals(TYPE_64FC2))
-			return 2;
-
-        if (encoding.equals(TYPE_8UC3) ||
-                encoding.equals(TYPE_8SC3) ||
-                encoding.equals(TYPE_16UC3) ||
-                encoding.equals(TYPE_16SC3) ||
-                encoding.equals(TYPE_32SC3) ||
-                encoding.equals(TYPE_32FC3) ||
-                encoding.equals(TYPE_64FC3))
-			return 3;
-
-        if (encoding.equals(TYPE_8UC4) ||
-                encoding.equals(TYPE_8SC4) ||
-                encoding.equals(TYPE_16UC4) ||
-                encoding.equals(TYPE_16SC4) ||
-                encoding.equals(TYPE_32SC4) ||
-                encoding.equals(TYPE_32FC4) ||
-                encoding.equals(TYPE_64FC4))
-			return 4;
-
-        throw new Exception("Unknown encoding " + encoding);
+        return getInfo(enc).numChannels;
     }
 
     public static int bitDepth(final String enc ) throws Exception {
+        return getInfo(enc).bitDepth;
+    }
 
-        String encoding = enc.toLowerCase();
-        if (encoding.equals(MONO16))
-			return 16;
-        if (encoding.equals(MONO8) ||
-                encoding.equals(BGR8) ||
-                encoding.equals(RGB8) ||
-                encoding.equals(BGRA8) ||
-                encoding.equals(RGBA8) ||
-                encoding.equals(BAYER_RGGB8) ||
-                encoding.equals(BAYER_BGGR8) ||
-                encoding.equals(BAYER_GBRG8) ||
-                encoding.equals(BAYER_GRBG8))
-			return 8;
-
-        if (encoding.equals(MONO16) ||
-                encoding.equals(BGR16) ||
-                encoding.equals(RGB16) ||
-                encoding.equals(BGRA16) ||
-                encoding.equals(RGBA16) ||
-                encoding.equals(BAYER_RGGB16) ||
-                encoding.equals(BAYER_BGGR16) ||
-                encoding.equals(BAYER_GBRG16) ||
-                encoding.equals(BAYER_GRBG16))
-			return 16;
-
-        if (encoding.equals(YUV422))
-            return 8;
-
-        encoding = encoding.toUpperCase();
-
-        if (encoding.equals(TYPE_8UC1) ||
-                encoding.equals(TYPE_8UC2) ||
-                encoding.equals(TYPE_8UC3) ||
-                encoding.equals(TYPE_8UC4))
-			return 8;
-
-        if (encoding.equals(TYPE_8SC1) ||
-                encoding.equals(TYPE_8SC2) ||
-                encoding.equals(TYPE_8SC3) ||
-                encoding.equals(TYPE_8SC4))
-			return 8;
-
-        if (encoding.equals(TYPE_16UC1) ||
-                encoding.equals(TYPE_16UC2) ||
-                encoding.equals(TYPE_16UC3) ||
-                encoding.equals(TYPE_16UC4))
-			return 16;
-
-        if (encoding.equals(TYPE_16SC1) ||
-                encoding.equals(TYPE_16SC2) ||
-                encoding.equals(TYPE_16SC3) ||
-                encoding.equals(TYPE_16SC4))
-			return 16;
-
-        if (encoding.equals(TYPE_32SC1) ||
-                encoding.equals(TYPE_32SC2) ||
-                encoding.equals(TYPE_32SC3) ||
-                encoding.equals(TYPE_32SC4))
-			return 32;
-
-        if (encoding.equals(TYPE_32FC1) ||
-                encoding.equals(TYPE_32FC2) ||
-                encoding.equals(TYPE_32FC3) ||
-                encoding.equals(TYPE_32FC4))
-			return 32;
-
-        if (encoding.equals(TYPE_64FC1) ||
-                encoding.equals(TYPE_64FC2) ||
-                encoding.equals(TYPE_64FC3) ||
-                encoding.equals(TYPE_64FC4))
-			return 64;
-
-        throw new Exception("Unknown encoding " + encoding);
+    protected static EncodingInfo getInfo(final String encoding) throws Exception {
+        EncodingInfo info = EncodingInfo.get(encoding);
+        if (info == null)
+            throw new Exception("Unknown encoding " + encoding);
+        return info;
     }
 }